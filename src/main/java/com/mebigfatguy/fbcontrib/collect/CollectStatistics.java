@@ -18,9 +18,12 @@
  */
 package com.mebigfatguy.fbcontrib.collect;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,7 +36,11 @@ import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 
 import com.mebigfatguy.fbcontrib.utils.CollectionUtils;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.QMethod;
+import com.mebigfatguy.fbcontrib.utils.SQLUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
@@ -45,6 +52,9 @@ import edu.umd.cs.findbugs.NonReportingDetector;
 import edu.umd.cs.findbugs.OpcodeStack;
 import edu.umd.cs.findbugs.ba.ClassContext;
 import edu.umd.cs.findbugs.ba.SignatureParser;
+import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
 
 /**
  * a first pass detector to collect various statistics used in second pass
@@ -69,14 +79,55 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
     // @formatter:on
     );
 
+    private static final String JDK_PACKAGE_PREFIX = Values.JAVA + '/';
+
+    private static final Set<String> GROWABLE_SIGS = UnmodifiableSet.create("Ljava/util/Map;",
+            "Ljava/util/HashMap;", "Ljava/util/LinkedHashMap;", "Ljava/util/TreeMap;", "Ljava/util/SortedMap;",
+            "Ljava/util/NavigableMap;", "Ljava/util/Hashtable;", "Ljava/util/IdentityHashMap;",
+            "Ljava/util/concurrent/ConcurrentMap;", "Ljava/util/concurrent/ConcurrentHashMap;",
+            "Ljava/util/concurrent/ConcurrentSkipListMap;", "Ljava/util/Collection;", "Ljava/util/List;",
+            "Ljava/util/ArrayList;", "Ljava/util/LinkedList;", "Ljava/util/Vector;", "Ljava/util/Set;",
+            "Ljava/util/HashSet;", "Ljava/util/LinkedHashSet;", "Ljava/util/TreeSet;", "Ljava/util/SortedSet;",
+            "Ljava/util/concurrent/ConcurrentSkipListSet;", "Ljava/util/concurrent/CopyOnWriteArrayList;",
+            "Ljava/util/concurrent/CopyOnWriteArraySet;", "Ljava/util/Queue;", "Ljava/util/Deque;",
+            "Ljava/util/ArrayDeque;", "Ljava/util/concurrent/ConcurrentLinkedQueue;");
+
+    private static final String WEAK_MAP_SIG = "Ljava/util/WeakHashMap;";
+
+    private static final Set<String> GROWING_METHODS = UnmodifiableSet.create("add", "addAll", "addElement",
+            "addFirst", "addLast", "offer", "push", "put", "putAll", "putIfAbsent", "computeIfAbsent", "compute",
+            "merge");
+
+    private static final Set<String> SHRINKING_METHODS = UnmodifiableSet.create("clear", "computeIfPresent",
+            "drainTo", "poll", "pollFirst", "pollLast", "pollFirstEntry", "pollLastEntry", "pop", "remove",
+            "removeAll", "removeElement", "removeElementAt", "removeFirst", "removeIf", "removeLast", "retainAll",
+            "replaceAll", "take");
+
+    private static final Set<String> VIEW_METHODS = UnmodifiableSet.create("keySet", "values", "entrySet",
+            "iterator", "listIterator", "descendingIterator", "descendingMap", "descendingSet", "navigableKeySet",
+            "headMap", "tailMap", "subMap", "headSet", "tailSet", "subSet", "subList");
+
+    private static final Set<String> PER_REQUEST_SOURCES = UnmodifiableSet.create(
+            "java.lang.System.currentTimeMillis", "java.lang.System.nanoTime", "java.time.Instant.now",
+            "java.time.LocalDateTime.now", "java.time.ZonedDateTime.now", "javax.servlet.http.HttpSession.getId",
+            "jakarta.servlet.http.HttpSession.getId", "javax.servlet.http.HttpServletRequest.getRequestedSessionId",
+            "jakarta.servlet.http.HttpServletRequest.getRequestedSessionId");
+
     private BugReporter bugReporter;
     private int numMethodCalls;
+    private int methodCost;
+    private String costLeaf;
     private boolean modifiesState;
     private boolean classHasAnnotation;
     private OpcodeStack stack;
     private Map<QMethod, Set<CalledMethod>> selfCallTree;
     private Set<QMethod> constrainingMethods;
+    private Map<QMethod, List<String>> inheritedDeclarations;
+    private Map<String, Map<QMethod, List<String>>> parentDeclarations;
     private QMethod curMethod;
+    private FQMethod curFQMethod;
+    private Set<Object> viewedCollections;
+    private Set<Integer> perRequestRegs;
 
     /**
      * constructs a CollectStatistics detector which clears the singleton that holds
@@ -89,6 +140,7 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
     public CollectStatistics(BugReporter bugReporter) {
         Statistics.getStatistics().clear();
         this.bugReporter = bugReporter;
+        parentDeclarations = new HashMap<>();
     }
 
     /**
@@ -101,10 +153,13 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         try {
             JavaClass cls = classContext.getJavaClass();
             constrainingMethods = buildConstrainingMethods(cls, new HashSet<String>());
+            inheritedDeclarations = buildInheritedDeclarations(cls);
             AnnotationEntry[] annotations = cls.getAnnotationEntries();
             classHasAnnotation = !CollectionUtils.isEmpty(annotations);
             stack = new OpcodeStack();
             selfCallTree = new HashMap<>();
+            viewedCollections = new HashSet<>();
+            perRequestRegs = new HashSet<>();
             super.visitClassContext(classContext);
 
             performModifyStateClosure(classContext.getJavaClass());
@@ -112,8 +167,12 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         } finally {
             stack = null;
             selfCallTree = null;
+            viewedCollections = null;
+            perRequestRegs = null;
             curMethod = null;
+            curFQMethod = null;
             constrainingMethods = null;
+            inheritedDeclarations = null;
         }
     }
 
@@ -131,6 +190,8 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
     public void visitCode(Code obj) {
 
         numMethodCalls = 0;
+        methodCost = CostUtils.COST_NONE;
+        costLeaf = null;
         modifiesState = false;
 
         byte[] code = obj.getCode();
@@ -139,11 +200,25 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         }
         stack.resetForMethodEntry(this);
         curMethod = null;
+        curFQMethod = new FQMethod(getClassName(), getMethodName(), getMethodSig());
+        viewedCollections.clear();
+        perRequestRegs.clear();
         super.visitCode(obj);
         String clsName = getClassName();
         Method method = getMethod();
         int accessFlags = method.getAccessFlags();
 
+        if (isOverridable(method)) {
+            List<String> declaringClasses = inheritedDeclarations.get(new QMethod(getMethodName(), getMethodSig()));
+            if (declaringClasses != null) {
+                // a call through the parent may dispatch here, so treat the parent method as calling this one
+                for (String declaringClass : declaringClasses) {
+                    Statistics.getStatistics().addDispatch(
+                            new FQMethod(declaringClass, getMethodName(), getMethodSig()), curFQMethod);
+                }
+            }
+        }
+
         boolean isDerived = false;
         if (!constrainingMethods.isEmpty()) {
             QMethod qm = new QMethod(method.getName(), method.getSignature());
@@ -170,11 +245,20 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         }
 
         mi.setModifiesState(modifiesState);
+
+        if ((accessFlags & Const.ACC_SYNCHRONIZED) != 0) {
+            addCost(CostUtils.COST_LOCK, "synchronized method " + getDottedClassName() + '.' + getMethodName());
+        }
+        if ((methodCost != CostUtils.COST_NONE) && !clsName.startsWith(JDK_PACKAGE_PREFIX)) {
+            Statistics.getStatistics().addMethodCost(curFQMethod, methodCost, costLeaf);
+        }
     }
 
     @Override
     public void sawOpcode(int seen) {
         try {
+            recordCollectionGrowth(seen);
+
             switch (seen) {
             case Const.INVOKEVIRTUAL:
             case Const.INVOKEINTERFACE:
@@ -183,6 +267,10 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
             case Const.INVOKEDYNAMIC:
                 numMethodCalls++;
 
+                if (seen != Const.INVOKEDYNAMIC) {
+                    recordCall();
+                }
+
                 if (seen != Const.INVOKESTATIC) {
                     int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
                     if (stack.getStackDepth() > numParms) {
@@ -211,6 +299,10 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
                 modifiesState = true;
                 break;
 
+            case Const.MONITORENTER:
+                addCost(CostUtils.COST_LOCK, "synchronized block in " + getDottedClassName() + '.' + getMethodName());
+                break;
+
             default:
                 break;
             }
@@ -219,6 +311,205 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         }
     }
 
+    /**
+     * implements the detector to propagate query execution and method costs through
+     * the call graph of all the classes seen, now that they all have been seen
+     */
+    @Override
+    public void report() {
+        Statistics.getStatistics().computeCallClosures();
+    }
+
+    /**
+     * records calls to database query methods, and to other costly methods, and
+     * calls to non jdk methods so that query execution and costs can be propagated
+     * to callers
+     */
+    private void recordCall() {
+        String calledClass = getClassConstantOperand();
+        if (calledClass.startsWith(Values.SIG_ARRAY_PREFIX)) {
+            return;
+        }
+
+        String calledMethod = getNameConstantOperand();
+        if (SQLUtils.isQueryMethod(calledClass, calledMethod)) {
+            Statistics.getStatistics().addQueryCall(curFQMethod,
+                    new FQMethod(calledClass, calledMethod, getSigConstantOperand()));
+        } else {
+            int cost = CostUtils.getCallCost(calledClass, calledMethod);
+            if (cost != CostUtils.COST_NONE) {
+                addCost(cost, calledClass.replace('/', '.') + '.' + calledMethod);
+            }
+            if (!calledClass.startsWith(JDK_PACKAGE_PREFIX)) {
+                Statistics.getStatistics().addCall(curFQMethod,
+                        new FQMethod(calledClass, calledMethod, getSigConstantOperand()));
+            }
+        }
+    }
+
+    /**
+     * records adds and removes on collections held in fields, or returned from
+     * accessor methods, so that collections that only ever grow can be found
+     * across classes. Any use that can't be followed, such as passing the
+     * collection to another application method, storing it elsewhere, or removing
+     * through one of its views, is taken as a possible removal.
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    private void recordCollectionGrowth(int seen) {
+        if ((seen == Const.INVOKEVIRTUAL) || (seen == Const.INVOKEINTERFACE) || (seen == Const.INVOKESTATIC)
+                || (seen == Const.INVOKESPECIAL)) {
+            String sig = getSigConstantOperand();
+            int numParms = SignatureUtils.getNumParameters(sig);
+            if (stack.getStackDepth() < numParms) {
+                return;
+            }
+
+            if (!getClassConstantOperand().startsWith(JDK_PACKAGE_PREFIX)) {
+                for (int i = 0; i < numParms; i++) {
+                    shrink(getCollectionOwner(stack.getStackItem(i)));
+                }
+            }
+
+            if ((seen == Const.INVOKESTATIC) || (seen == Const.INVOKESPECIAL) || (stack.getStackDepth() <= numParms)) {
+                return;
+            }
+
+            String calledMethod = getNameConstantOperand();
+            Object owner = getCollectionOwner(stack.getStackItem(numParms));
+            if (owner == null) {
+                if (SHRINKING_METHODS.contains(calledMethod)) {
+                    // may be removing through a view or iterator of a collection
+                    for (Object viewed : viewedCollections) {
+                        shrink(viewed);
+                    }
+                }
+            } else if (GROWING_METHODS.contains(calledMethod)) {
+                boolean perRequestKey = (numParms > 0) && isPerRequestValue(stack.getStackItem(numParms - 1));
+                if (owner instanceof XField) {
+                    Statistics.getStatistics().addFieldGrowth((XField) owner, curFQMethod, perRequestKey);
+                } else {
+                    Statistics.getStatistics().addAccessorGrowth((FQMethod) owner, curFQMethod, perRequestKey);
+                }
+            } else if (SHRINKING_METHODS.contains(calledMethod)) {
+                shrink(owner);
+            } else if (VIEW_METHODS.contains(calledMethod)) {
+                viewedCollections.add(owner);
+            }
+        } else if (seen == Const.ARETURN) {
+            if (stack.getStackDepth() > 0) {
+                Object owner = getCollectionOwner(stack.getStackItem(0));
+                if (owner instanceof XField) {
+                    Statistics.getStatistics().addFieldAccessor(curFQMethod, (XField) owner);
+                } else {
+                    shrink(owner);
+                }
+            }
+        } else if ((seen == Const.PUTFIELD) || (seen == Const.PUTSTATIC)) {
+            if (stack.getStackDepth() > 0) {
+                shrink(getCollectionOwner(stack.getStackItem(0)));
+            }
+            if (GROWABLE_SIGS.contains(getSigConstantOperand()) && isReplacingCollection(seen)) {
+                Statistics.getStatistics().addFieldShrink(XFactory.createXField(getDottedClassConstantOperand(),
+                        getNameConstantOperand(), getSigConstantOperand(), seen == Const.PUTSTATIC));
+            }
+        } else if (OpcodeUtils.isStore(seen)) {
+            if (stack.getStackDepth() > 0) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                shrink(getCollectionOwner(itm));
+                Integer reg = Integer.valueOf(getRegisterOperand());
+                if (isPerRequestValue(itm)) {
+                    perRequestRegs.add(reg);
+                } else {
+                    perRequestRegs.remove(reg);
+                }
+            }
+        } else if (seen == Const.AASTORE) {
+            if (stack.getStackDepth() > 0) {
+                shrink(getCollectionOwner(stack.getStackItem(0)));
+            }
+        }
+    }
+
+    /**
+     * returns whether a collection stored into a field may not grow without bounds,
+     * because it replaces, and so empties, the field's collection outside of
+     * initialization, or is a weak or custom collection, such as a LinkedHashMap
+     * that removes its eldest entry
+     *
+     * @param seen the PUTFIELD or PUTSTATIC opcode
+     * @return if the stored collection isn't an unbounded one
+     */
+    private boolean isReplacingCollection(int seen) {
+        String methodName = getMethodName();
+        if (!Values.CONSTRUCTOR.equals(methodName) && !Values.STATIC_INITIALIZER.equals(methodName)) {
+            return true;
+        }
+
+        if (stack.getStackDepth() == 0) {
+            return true;
+        }
+        String storedSig = stack.getStackItem(0).getSignature();
+        return !storedSig.startsWith("Ljava/util/") || WEAK_MAP_SIG.equals(storedSig);
+    }
+
+    /**
+     * returns what holds the collection on the stack, a field, or an application
+     * method that returns it
+     *
+     * @param itm the stack item to check
+     * @return the XField or FQMethod holding the collection, or null
+     */
+    private Object getCollectionOwner(OpcodeStack.Item itm) {
+        XField field = itm.getXField();
+        if (field != null) {
+            return GROWABLE_SIGS.contains(field.getSignature()) ? field : null;
+        }
+
+        XMethod xm = itm.getReturnValueOf();
+        if ((xm != null) && !xm.getClassName().startsWith(Values.JAVA)
+                && GROWABLE_SIGS.contains(SignatureUtils.getReturnSignature(xm.getSignature()))) {
+            return new FQMethod(xm.getClassName().replace('.', '/'), xm.getName(), xm.getSignature());
+        }
+        return null;
+    }
+
+    private static void shrink(Object owner) {
+        if (owner instanceof XField) {
+            Statistics.getStatistics().addFieldShrink((XField) owner);
+        } else if (owner instanceof FQMethod) {
+            Statistics.getStatistics().addAccessorShrink((FQMethod) owner);
+        }
+    }
+
+    /**
+     * returns whether a value is unique to a request or moment, such as a uuid, a
+     * session id or a timestamp, which makes for keys that never repeat
+     *
+     * @param itm the stack item to check
+     * @return if the value is unique per request
+     */
+    private boolean isPerRequestValue(OpcodeStack.Item itm) {
+        int reg = itm.getRegisterNumber();
+        if ((reg >= 0) && perRequestRegs.contains(Integer.valueOf(reg))) {
+            return true;
+        }
+
+        XMethod xm = itm.getReturnValueOf();
+        if (xm == null) {
+            return false;
+        }
+        return "java.util.UUID".equals(xm.getClassName())
+                || PER_REQUEST_SOURCES.contains(xm.getClassName() + '.' + xm.getName());
+    }
+
+    private void addCost(int cost, String leaf) {
+        methodCost |= cost;
+        if (costLeaf == null) {
+            costLeaf = leaf;
+        }
+    }
+
     private void performModifyStateClosure(JavaClass cls) {
         boolean foundNewCall = true;
         Statistics statistics = Statistics.getStatistics();
@@ -317,6 +608,103 @@ public class CollectStatistics extends BytecodeScanningDetector implements NonRe
         return constraints;
     }
 
+    /**
+     * collects the non jdk parent classes and interfaces that declare each
+     * overridable method, so calls through those parents can be linked to this
+     * class's implementation. Classes with nothing to override are skipped, and
+     * the declarations of each parent are built once and shared by all of its
+     * children.
+     *
+     * @param cls the class being visited
+     * @return a map of method to the slashed names of the parents that declare it
+     */
+    private Map<QMethod, List<String>> buildInheritedDeclarations(JavaClass cls) {
+        for (Method m : cls.getMethods()) {
+            if (isOverridable(m)) {
+                try {
+                    return getParentDeclarations(cls);
+                } catch (ClassNotFoundException e) {
+                    bugReporter.reportMissingClass(e);
+                    break;
+                }
+            }
+        }
+
+        return Collections.emptyMap();
+    }
+
+    /**
+     * returns the overridable methods declared by the non jdk parents of a class,
+     * memoized by class name
+     *
+     * @param cls the class whose parents are collected
+     * @return a map of method to the slashed names of the parents that declare it
+     * @throws ClassNotFoundException if a parent can't be found
+     */
+    private Map<QMethod, List<String>> getParentDeclarations(JavaClass cls) throws ClassNotFoundException {
+        Map<QMethod, List<String>> declarations = parentDeclarations.get(cls.getClassName());
+        if (declarations != null) {
+            return declarations;
+        }
+
+        declarations = new HashMap<>();
+        List<JavaClass> parents = new ArrayList<>();
+        JavaClass superCls = cls.getSuperClass();
+        if (superCls != null) {
+            parents.add(superCls);
+        }
+        Collections.addAll(parents, cls.getInterfaces());
+
+        for (JavaClass parent : parents) {
+            String parentName = parent.getClassName();
+            if (parentName.startsWith(Values.JAVA)) {
+                continue;
+            }
+
+            String slashedName = parentName.replace('.', '/');
+            for (Method m : parent.getMethods()) {
+                if (isOverridable(m)) {
+                    addDeclaration(declarations, new QMethod(m.getName(), m.getSignature()), slashedName);
+                }
+            }
+
+            for (Map.Entry<QMethod, List<String>> entry : getParentDeclarations(parent).entrySet()) {
+                for (String declaringClass : entry.getValue()) {
+                    addDeclaration(declarations, entry.getKey(), declaringClass);
+                }
+            }
+        }
+
+        parentDeclarations.put(cls.getClassName(), declarations);
+        return declarations;
+    }
+
+    private static void addDeclaration(Map<QMethod, List<String>> declarations, QMethod qm, String declaringClass) {
+        List<String> declaringClasses = declarations.get(qm);
+        if (declaringClasses == null) {
+            declaringClasses = new ArrayList<>(2);
+            declarations.put(qm, declaringClasses);
+        }
+        if (!declaringClasses.contains(declaringClass)) {
+            declaringClasses.add(declaringClass);
+        }
+    }
+
+    /**
+     * returns whether a method can be overridden, and so dispatched to from a
+     * parent's declaration; constructors and static initializers never are
+     *
+     * @param m the method to check
+     * @return if the method is an overridable instance method
+     */
+    private static boolean isOverridable(Method m) {
+        if ((m.getAccessFlags() & (Const.ACC_STATIC | Const.ACC_PRIVATE)) != 0) {
+            return false;
+        }
+        String name = m.getName();
+        return !Values.CONSTRUCTOR.equals(name) && !Values.STATIC_INITIALIZER.equals(name);
+    }
+
     private boolean isConstrained(QMethod m) {
         if (constrainingMethods.contains(m)) {
             return true;
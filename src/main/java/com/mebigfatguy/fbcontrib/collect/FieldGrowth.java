@@ -0,0 +1,85 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.collect;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+
+/**
+ * represents how a collection held in a field, or returned by an accessor
+ * method, is grown and shrunk across all the classes seen in the first pass
+ */
+public class FieldGrowth {
+
+    private final Set<FQMethod> growingMethods = Collections
+            .newSetFromMap(new ConcurrentHashMap<FQMethod, Boolean>());
+    private volatile boolean shrinks;
+    private volatile boolean perRequestKeys;
+
+    public void addGrowingMethod(FQMethod method, boolean perRequestKey) {
+        growingMethods.add(method);
+        if (perRequestKey) {
+            perRequestKeys = true;
+        }
+    }
+
+    public Set<FQMethod> getGrowingMethods() {
+        return growingMethods;
+    }
+
+    public void setShrinks() {
+        shrinks = true;
+    }
+
+    public boolean getShrinks() {
+        return shrinks;
+    }
+
+    /**
+     * returns whether entries are added with keys that are unique to a request or
+     * moment, such as session ids, uuids or timestamps, so that the collection
+     * can't reach a steady size
+     *
+     * @return if per request keys are added
+     */
+    public boolean hasPerRequestKeys() {
+        return perRequestKeys;
+    }
+
+    /**
+     * folds in the growth and shrinkage seen through another reference to the same
+     * collection, such as an accessor method that returns it
+     *
+     * @param other the growth seen through the other reference
+     */
+    public void merge(FieldGrowth other) {
+        growingMethods.addAll(other.growingMethods);
+        shrinks |= other.shrinks;
+        perRequestKeys |= other.perRequestKeys;
+    }
+
+    @Override
+    public String toString() {
+        return ToString.build(this);
+    }
+}
@@ -37,6 +37,8 @@ public class MethodInfo {
     private byte immutabilityOrdinal;
     private byte declaredAccess;
     private byte isCalledType;
+    private byte costClasses;
+    private byte numCallers;
     private boolean modifiesState;
     private boolean canReturnNull;
     private boolean isDerived;
@@ -129,6 +131,34 @@ public class MethodInfo {
         this.isDerived = isDerived;
     }
 
+    /**
+     * returns the kinds of expensive work this method does, itself or through the
+     * methods it calls, as CostUtils cost class flags
+     *
+     * @return the cost class flags
+     */
+    public int getCostClasses() {
+        return costClasses;
+    }
+
+    public void setCostClasses(int costs) {
+        costClasses = (byte) costs;
+    }
+
+    /**
+     * returns the number of distinct application methods that were seen to call
+     * this method, as a rough measure of how hot the method is
+     *
+     * @return the number of callers, capped at 127
+     */
+    public int getNumCallers() {
+        return numCallers;
+    }
+
+    public void setNumCallers(int callers) {
+        numCallers = callers > Byte.MAX_VALUE ? Byte.MAX_VALUE : (byte) callers;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof MethodInfo)) {
@@ -18,15 +18,26 @@
  */
 package com.mebigfatguy.fbcontrib.collect;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import javax.annotation.Nullable;
+
+import org.apache.bcel.Const;
+
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
 import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
 
+import edu.umd.cs.findbugs.ba.XField;
 import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 
@@ -42,6 +53,15 @@ public final class Statistics implements Iterable<Map.Entry<FQMethod, MethodInfo
 
     private final Set<String> autowiredBeans = new HashSet<>();
 
+    private final Map<FQMethod, Set<FQMethod>> callersOfMethod = new ConcurrentHashMap<>();
+    private final Map<FQMethod, Set<FQMethod>> dispatchersOfMethod = new ConcurrentHashMap<>();
+    private final Map<FQMethod, FQMethod> queryPaths = new ConcurrentHashMap<>();
+    private final Map<FQMethod, String> costLeaves = new ConcurrentHashMap<>();
+    private final Map<FQMethod, Integer> declarationCosts = new ConcurrentHashMap<>();
+    private final Map<XField, FieldGrowth> fieldGrowth = new ConcurrentHashMap<>();
+    private final Map<FQMethod, FieldGrowth> accessorGrowth = new ConcurrentHashMap<>();
+    private final Map<FQMethod, XField> fieldAccessors = new ConcurrentHashMap<>();
+
     private Statistics() {
     }
 
@@ -51,6 +71,14 @@ public final class Statistics implements Iterable<Map.Entry<FQMethod, MethodInfo
 
     public void clear() {
         methodStatistics.clear();
+        callersOfMethod.clear();
+        dispatchersOfMethod.clear();
+        queryPaths.clear();
+        costLeaves.clear();
+        declarationCosts.clear();
+        fieldGrowth.clear();
+        accessorGrowth.clear();
+        fieldAccessors.clear();
     }
 
     public MethodInfo addMethodStatistics(String className, String methodName, String signature, int access,
@@ -101,6 +129,345 @@ public final class Statistics implements Iterable<Map.Entry<FQMethod, MethodInfo
         return autowiredBeans.contains(beanClass);
     }
 
+    /**
+     * records that a method calls another application method, so that query
+     * execution can be propagated back to the caller
+     *
+     * @param caller the method making the call
+     * @param callee the method being called
+     */
+    public void addCall(FQMethod caller, FQMethod callee) {
+        addEdge(callersOfMethod, caller, callee);
+    }
+
+    /**
+     * records that a call to a parent's method may dispatch to an overriding
+     * method, so that query execution and costs are propagated to the parent's
+     * method, without counting it as a caller
+     *
+     * @param declaration    the method declared in the parent
+     * @param implementation the method that overrides it
+     */
+    public void addDispatch(FQMethod declaration, FQMethod implementation) {
+        addEdge(dispatchersOfMethod, declaration, implementation);
+    }
+
+    private static void addEdge(Map<FQMethod, Set<FQMethod>> edges, FQMethod from, FQMethod to) {
+        Set<FQMethod> froms = edges.get(to);
+        if (froms == null) {
+            froms = Collections.newSetFromMap(new ConcurrentHashMap<FQMethod, Boolean>());
+            Set<FQMethod> oldFroms = edges.putIfAbsent(to, froms);
+            if (oldFroms != null) {
+                froms = oldFroms;
+            }
+        }
+        froms.add(from);
+    }
+
+    /**
+     * records that a method directly runs a database query or update
+     *
+     * @param caller   the method making the call
+     * @param queryApi the jdbc, jpa or spring method that is called
+     */
+    public void addQueryCall(FQMethod caller, FQMethod queryApi) {
+        queryPaths.putIfAbsent(caller, queryApi);
+    }
+
+    /**
+     * records the expensive work a method does directly, and the operation that
+     * does it
+     *
+     * @param method      the method doing the work
+     * @param costClasses the CostUtils cost class flags of the work
+     * @param leaf        a description of the expensive operation
+     */
+    public void addMethodCost(FQMethod method, int costClasses, String leaf) {
+        addCostClasses(method, costClasses);
+        costLeaves.putIfAbsent(method, leaf);
+    }
+
+    /**
+     * returns the kinds of expensive work a method does, itself or through the
+     * methods it calls, including abstract methods whose implementations do it
+     *
+     * @param className  the slashed class name of the method
+     * @param methodName the name of the method
+     * @param signature  the signature of the method
+     * @return the CostUtils cost class flags
+     */
+    public int getMethodCost(@SlashedClassName String className, String methodName, String signature) {
+        return getCostClasses(new FQMethod(className, methodName, signature));
+    }
+
+    /**
+     * returns a description of the expensive operation that a costly method ends
+     * up doing
+     *
+     * @param className  the slashed class name of the method
+     * @param methodName the name of the method
+     * @param signature  the signature of the method
+     * @return the description of the operation, or null if the method isn't costly
+     */
+    public String getCostLeaf(@SlashedClassName String className, String methodName, String signature) {
+        return costLeaves.get(new FQMethod(className, methodName, signature));
+    }
+
+    /**
+     * records that a method adds to a collection held in a field
+     *
+     * @param field         the field holding the collection
+     * @param method        the method adding to it
+     * @param perRequestKey whether the key added is unique to a request or moment
+     */
+    public void addFieldGrowth(XField field, FQMethod method, boolean perRequestKey) {
+        getGrowth(fieldGrowth, field).addGrowingMethod(method, perRequestKey);
+    }
+
+    /**
+     * records that a collection held in a field may be removed from, cleared or
+     * replaced, possibly by code that can't be followed
+     *
+     * @param field the field holding the collection
+     */
+    public void addFieldShrink(XField field) {
+        getGrowth(fieldGrowth, field).setShrinks();
+    }
+
+    /**
+     * records that a method adds to the collection returned by an accessor method
+     *
+     * @param accessor      the method returning the collection
+     * @param method        the method adding to it
+     * @param perRequestKey whether the key added is unique to a request or moment
+     */
+    public void addAccessorGrowth(FQMethod accessor, FQMethod method, boolean perRequestKey) {
+        getGrowth(accessorGrowth, accessor).addGrowingMethod(method, perRequestKey);
+    }
+
+    /**
+     * records that the collection returned by an accessor method may be removed
+     * from, or cleared
+     *
+     * @param accessor the method returning the collection
+     */
+    public void addAccessorShrink(FQMethod accessor) {
+        getGrowth(accessorGrowth, accessor).setShrinks();
+    }
+
+    /**
+     * records that a method returns the collection held in a field, so that use of
+     * its return value can be applied to the field
+     *
+     * @param accessor the method returning the field
+     * @param field    the field that is returned
+     */
+    public void addFieldAccessor(FQMethod accessor, XField field) {
+        fieldAccessors.put(accessor, field);
+    }
+
+    /**
+     * returns how the collection held in a field is grown and shrunk by all the
+     * classes of the program, directly or through accessor methods
+     *
+     * @param field the field holding the collection
+     * @return the growth of the field, or null if it isn't used as a collection
+     */
+    @Nullable
+    public FieldGrowth getFieldGrowth(XField field) {
+        return fieldGrowth.get(field);
+    }
+
+    private static <K> FieldGrowth getGrowth(Map<K, FieldGrowth> growths, K key) {
+        FieldGrowth growth = growths.get(key);
+        if (growth == null) {
+            growth = new FieldGrowth();
+            FieldGrowth oldGrowth = growths.putIfAbsent(key, growth);
+            if (oldGrowth != null) {
+                growth = oldGrowth;
+            }
+        }
+        return growth;
+    }
+
+    /**
+     * propagates database queries and expensive work back through the collected
+     * call graph, now that all classes have been seen. For queries, the next
+     * method along the shortest path to the query is remembered, and for costs, the
+     * leaf operation. The number of callers of each method is kept, not counting
+     * dispatch from overridden declarations, the growth of collections through
+     * accessor methods is applied to their fields, and the call graph is then
+     * discarded, as it is only needed for this.
+     */
+    public void computeCallClosures() {
+        Deque<FQMethod> worklist = new ArrayDeque<>(queryPaths.keySet());
+        while (!worklist.isEmpty()) {
+            FQMethod callee = worklist.removeFirst();
+            for (FQMethod caller : getCallers(callee)) {
+                if (queryPaths.putIfAbsent(caller, callee) == null) {
+                    worklist.addLast(caller);
+                }
+            }
+        }
+
+        worklist.addAll(costLeaves.keySet());
+        while (!worklist.isEmpty()) {
+            FQMethod callee = worklist.removeFirst();
+            int calleeCost = getCostClasses(callee);
+            String leaf = costLeaves.get(callee);
+            for (FQMethod caller : getCallers(callee)) {
+                if (addCostClasses(caller, calleeCost)) {
+                    costLeaves.putIfAbsent(caller, leaf);
+                    worklist.addLast(caller);
+                }
+            }
+        }
+
+        for (Map.Entry<FQMethod, Set<FQMethod>> entry : callersOfMethod.entrySet()) {
+            MethodInfo mi = methodStatistics.get(entry.getKey());
+            if (mi != null) {
+                mi.setNumCallers(entry.getValue().size());
+            }
+        }
+
+        resolveFieldGrowth();
+
+        callersOfMethod.clear();
+        dispatchersOfMethod.clear();
+    }
+
+    /**
+     * applies growth seen through accessor methods to the fields they return, and
+     * drops growth that is only done while initializing, from static initializers
+     * for static fields, or constructors for instance fields, as that populates
+     * the collection once
+     */
+    private void resolveFieldGrowth() {
+        for (Map.Entry<FQMethod, FieldGrowth> entry : accessorGrowth.entrySet()) {
+            XField field = fieldAccessors.get(entry.getKey());
+            if (field != null) {
+                getGrowth(fieldGrowth, field).merge(entry.getValue());
+            }
+        }
+        accessorGrowth.clear();
+        fieldAccessors.clear();
+
+        for (Map.Entry<XField, FieldGrowth> entry : fieldGrowth.entrySet()) {
+            String initializer = entry.getKey().isStatic() ? Values.STATIC_INITIALIZER : Values.CONSTRUCTOR;
+            Iterator<FQMethod> it = entry.getValue().getGrowingMethods().iterator();
+            while (it.hasNext()) {
+                if (isOnlyCalledFrom(it.next(), initializer, new HashSet<FQMethod>())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * returns whether a method is an initializer, or is only called, directly or
+     * indirectly, from initializers
+     *
+     * @param method      the method to check
+     * @param initializer the name of the initializer method
+     * @param visited     the methods already checked, to stop on recursion
+     * @return if the method only runs while initializing
+     */
+    private boolean isOnlyCalledFrom(FQMethod method, String initializer, Set<FQMethod> visited) {
+        if (initializer.equals(method.getMethodName())) {
+            return true;
+        }
+        if (!visited.add(method)) {
+            return true;
+        }
+
+        MethodInfo mi = methodStatistics.get(method);
+        if ((mi != null) && ((mi.getDeclaredAccess() & Const.ACC_PRIVATE) == 0)) {
+            return false;
+        }
+
+        List<FQMethod> callers = getCallers(method);
+        if (callers.isEmpty()) {
+            return false;
+        }
+
+        for (FQMethod caller : callers) {
+            if (!isOnlyCalledFrom(caller, initializer, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns the methods that call, or dispatch to, a method
+     *
+     * @param callee the method being called
+     * @return the calling methods and overridden declarations
+     */
+    private List<FQMethod> getCallers(FQMethod callee) {
+        List<FQMethod> callers = new ArrayList<>();
+        Set<FQMethod> methods = callersOfMethod.get(callee);
+        if (methods != null) {
+            callers.addAll(methods);
+        }
+        methods = dispatchersOfMethod.get(callee);
+        if (methods != null) {
+            callers.addAll(methods);
+        }
+        return callers;
+    }
+
+    private int getCostClasses(FQMethod method) {
+        MethodInfo mi = methodStatistics.get(method);
+        if (mi != null) {
+            return mi.getCostClasses();
+        }
+        Integer cost = declarationCosts.get(method);
+        return (cost == null) ? 0 : cost.intValue();
+    }
+
+    private boolean addCostClasses(FQMethod method, int costClasses) {
+        int oldCost = getCostClasses(method);
+        int newCost = oldCost | costClasses;
+        if (newCost == oldCost) {
+            return false;
+        }
+
+        MethodInfo mi = methodStatistics.get(method);
+        if (mi != null) {
+            mi.setCostClasses(newCost);
+        } else {
+            declarationCosts.put(method, Integer.valueOf(newCost));
+        }
+        return true;
+    }
+
+    /**
+     * returns the chain of calls from a method to the database query that it may
+     * run, starting with the method itself, and ending with the jdbc, jpa or
+     * spring method, or an empty list if it doesn't run a query
+     *
+     * @param className  the slashed class name of the method
+     * @param methodName the name of the method
+     * @param signature  the signature of the method
+     * @return the call chain to the query
+     */
+    public List<FQMethod> getQueryPath(@SlashedClassName String className, String methodName, String signature) {
+        FQMethod method = new FQMethod(className, methodName, signature);
+        FQMethod next = queryPaths.get(method);
+        if (next == null) {
+            return Collections.emptyList();
+        }
+
+        List<FQMethod> path = new ArrayList<>();
+        path.add(method);
+        while (next != null) {
+            path.add(next);
+            next = queryPaths.get(next);
+        }
+        return path;
+    }
+
     @Override
     public String toString() {
         return ToString.build(this);
@@ -0,0 +1,330 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.BootstrapMethod;
+import org.apache.bcel.classfile.BootstrapMethods;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.AttributesUtils;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.SQLUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for lambdas and method references that block, on i/o, database queries,
+ * sleeping or waiting, that are run on the common fork join pool, through
+ * parallel streams, CompletableFuture async methods that aren't given an
+ * executor, or ForkJoinPool.commonPool() directly. The common pool is shared by
+ * the whole jvm, and only has as many threads as there are processors, less
+ * one, so blocking in it starves unrelated work. The lambda bodies are checked
+ * through the costs and queries collected in the first pass, so blocking done
+ * further down the call chain is found as well.
+ */
+@CustomUserValue
+public class BlockingInCommonPool extends BytecodeScanningDetector {
+
+    private static final int BLOCKING_COSTS = CostUtils.COST_IO | CostUtils.COST_BLOCKING;
+    private static final String JDK_PACKAGE_PREFIX = Values.JAVA + '/';
+    private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+    private static final String STREAM_PACKAGE_PREFIX = "java/util/stream/";
+    private static final String COMPLETABLE_FUTURE_CLASS = "java/util/concurrent/CompletableFuture";
+    private static final String FORK_JOIN_POOL_CLASS = "java/util/concurrent/ForkJoinPool";
+    private static final String EXECUTOR_SIG = "Ljava/util/concurrent/Executor;";
+    private static final String ASYNC_SUFFIX = "Async";
+
+    private static final Set<String> COMPLETION_CLASSES = UnmodifiableSet.create(COMPLETABLE_FUTURE_CLASS,
+            "java/util/concurrent/CompletionStage");
+
+    private static final Set<String> EXECUTOR_CLASSES = UnmodifiableSet.create(FORK_JOIN_POOL_CLASS,
+            "java/util/concurrent/ExecutorService", "java/util/concurrent/Executor");
+
+    private static final Set<String> SUBMIT_METHODS = UnmodifiableSet.create("execute", "submit", "invoke",
+            "invokeAll", "invokeAny");
+
+    /** marks a stream that runs its operations on the common pool */
+    private static final String PARALLEL_STREAM = "parallel stream";
+    /** marks the common pool itself */
+    private static final String COMMON_POOL = "ForkJoinPool.commonPool()";
+
+    private final BugReporter bugReporter;
+    private BootstrapMethods bootstrapAtt;
+    private OpcodeStack stack;
+
+    /**
+     * constructs a BICP detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public BlockingInCommonPool(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to only look at classes that create lambdas, and to
+     * create and clear the stack
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            JavaClass cls = classContext.getJavaClass();
+            if (cls.getMajor() >= Const.MAJOR_1_8) {
+                bootstrapAtt = AttributesUtils.getBootstrapAttribute(cls);
+                if (bootstrapAtt != null) {
+                    stack = new OpcodeStack();
+                    super.visitClassContext(classContext);
+                }
+            }
+        } finally {
+            bootstrapAtt = null;
+            stack = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the stack
+     *
+     * @param obj the context object of the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        super.visitCode(obj);
+    }
+
+    /**
+     * implements the visitor to follow lambdas, parallel streams and the common
+     * pool on the stack, and to report blocking lambdas handed to them
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        Object userValue = null;
+        try {
+            stack.precomputation(this);
+
+            switch (seen) {
+            case Const.INVOKEDYNAMIC:
+                userValue = getLambdaImplementation();
+                break;
+
+            case Const.INVOKESTATIC:
+                userValue = processStaticCall();
+                break;
+
+            case Const.INVOKEVIRTUAL:
+            case Const.INVOKEINTERFACE:
+                userValue = processInstanceCall();
+                break;
+
+            default:
+                break;
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+            if ((userValue != null) && (stack.getStackDepth() > 0)) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                itm.setUserValue(userValue);
+            }
+        }
+    }
+
+    /**
+     * looks for the common pool being fetched, and CompletableFuture.supplyAsync
+     * and runAsync being called without an executor
+     *
+     * @return the user value to mark the result with, or null
+     */
+    @Nullable
+    private Object processStaticCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+        if (FORK_JOIN_POOL_CLASS.equals(clsName)) {
+            return "commonPool".equals(methodName) ? COMMON_POOL : null;
+        }
+
+        if (COMPLETABLE_FUTURE_CLASS.equals(clsName) && methodName.endsWith(ASYNC_SUFFIX)) {
+            String sig = getSigConstantOperand();
+            if (!sig.contains(EXECUTOR_SIG)) {
+                checkArguments(sig, "CompletableFuture." + methodName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * looks for parallel streams being made, and the operations run on them, async
+     * completion stages chained without an executor, and tasks submitted to the
+     * common pool
+     *
+     * @return the user value to mark the result with, or null
+     */
+    @Nullable
+    private Object processInstanceCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+        String sig = getSigConstantOperand();
+        int numParms = SignatureUtils.getNumParameters(sig);
+        if (stack.getStackDepth() <= numParms) {
+            return null;
+        }
+        Object receiverValue = stack.getStackItem(numParms).getUserValue();
+
+        if ("parallelStream".equals(methodName)
+                || ("parallel".equals(methodName) && clsName.startsWith(STREAM_PACKAGE_PREFIX))) {
+            return PARALLEL_STREAM;
+        }
+
+        if (PARALLEL_STREAM.equals(receiverValue) && clsName.startsWith(STREAM_PACKAGE_PREFIX)) {
+            checkArguments(sig, PARALLEL_STREAM + ' ' + methodName);
+            String returnSig = SignatureUtils.getReturnSignature(sig);
+            if (!"sequential".equals(methodName) && returnSig.startsWith("L" + STREAM_PACKAGE_PREFIX)
+                    && returnSig.endsWith("Stream;")) {
+                return PARALLEL_STREAM;
+            }
+            return null;
+        }
+
+        if (COMPLETION_CLASSES.contains(clsName) && methodName.endsWith(ASYNC_SUFFIX)
+                && !sig.contains(EXECUTOR_SIG)) {
+            checkArguments(sig, "CompletableFuture." + methodName);
+        } else if (COMMON_POOL.equals(receiverValue) && EXECUTOR_CLASSES.contains(clsName)
+                && SUBMIT_METHODS.contains(methodName)) {
+            checkArguments(sig, COMMON_POOL + '.' + methodName);
+        }
+        return null;
+    }
+
+    /**
+     * reports the arguments of a call that are lambdas or method references that
+     * block
+     *
+     * @param sig the signature of the called method
+     * @param api a description of how the call runs its arguments on the common
+     *            pool
+     */
+    private void checkArguments(String sig, String api) {
+        int numParms = SignatureUtils.getNumParameters(sig);
+        for (int i = 0; (i < numParms) && (i < stack.getStackDepth()); i++) {
+            Object uv = stack.getStackItem(i).getUserValue();
+            if (uv instanceof FQMethod) {
+                String blockingCall = getBlockingCall((FQMethod) uv);
+                if (blockingCall != null) {
+                    bugReporter.reportBug(
+                            new BugInstance(this, BugType.BICP_BLOCKING_IN_COMMON_POOL.name(), NORMAL_PRIORITY)
+                                    .addClass(this).addMethod(this).addSourceLine(this).addString(api)
+                                    .addString(blockingCall));
+                }
+            }
+        }
+    }
+
+    /**
+     * returns the blocking operation that a lambda implementation method ends up
+     * doing, looking at jdk methods directly, and at application methods through
+     * what was found in the first pass
+     *
+     * @param method the method that implements the lambda
+     * @return a description of the blocking operation, or null if it doesn't block
+     */
+    @Nullable
+    private static String getBlockingCall(FQMethod method) {
+        String clsName = method.getClassName();
+        String methodName = method.getMethodName();
+        if (clsName.startsWith(JDK_PACKAGE_PREFIX)) {
+            if (SQLUtils.isQueryMethod(clsName, methodName)
+                    || ((CostUtils.getCallCost(clsName, methodName) & BLOCKING_COSTS) != CostUtils.COST_NONE)) {
+                return clsName.replace('/', '.') + '.' + methodName;
+            }
+            return null;
+        }
+
+        Statistics statistics = Statistics.getStatistics();
+        List<FQMethod> queryPath = statistics.getQueryPath(clsName, methodName, method.getSignature());
+        if (!queryPath.isEmpty()) {
+            FQMethod query = queryPath.get(queryPath.size() - 1);
+            return query.getClassName().replace('/', '.') + '.' + query.getMethodName();
+        }
+
+        if ((statistics.getMethodCost(clsName, methodName, method.getSignature())
+                & BLOCKING_COSTS) != CostUtils.COST_NONE) {
+            return statistics.getCostLeaf(clsName, methodName, method.getSignature());
+        }
+        return null;
+    }
+
+    /**
+     * returns the method that implements the lambda or method reference being
+     * created by the current invokedynamic
+     *
+     * @return the implementing method, or null if this isn't a lambda creation
+     */
+    @Nullable
+    private FQMethod getLambdaImplementation() {
+        ConstantPool cp = getConstantPool();
+        ConstantInvokeDynamic cid = (ConstantInvokeDynamic) getConstantRefOperand();
+        BootstrapMethod bsMethod = bootstrapAtt.getBootstrapMethods()[cid.getBootstrapMethodAttrIndex()];
+
+        ConstantMethodHandle factory = (ConstantMethodHandle) cp.getConstant(bsMethod.getBootstrapMethodRef());
+        ConstantCP factoryRef = (ConstantCP) cp.getConstant(factory.getReferenceIndex());
+        if (!LAMBDA_METAFACTORY.equals(cp.getConstantString(factoryRef.getClassIndex(), Const.CONSTANT_Class))) {
+            return null;
+        }
+
+        for (int arg : bsMethod.getBootstrapArguments()) {
+            Constant c = cp.getConstant(arg);
+            if (c instanceof ConstantMethodHandle) {
+                ConstantCP methodRef = (ConstantCP) cp.getConstant(((ConstantMethodHandle) c).getReferenceIndex());
+                ConstantNameAndType nameAndType = (ConstantNameAndType) cp
+                        .getConstant(methodRef.getNameAndTypeIndex());
+                return new FQMethod(methodRef.getClass(cp).replace('.', '/'), nameAndType.getName(cp),
+                        nameAndType.getSignature(cp));
+            }
+        }
+        return null;
+    }
+}
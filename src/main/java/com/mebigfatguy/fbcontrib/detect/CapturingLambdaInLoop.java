@@ -0,0 +1,226 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.BootstrapMethods;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.utils.AttributesUtils;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for lambdas and method references that capture values, created inside
+ * of loops, where all the captured values are the same on every iteration.
+ * Each execution of a capturing invokedynamic allocates a new instance, so
+ * these could be created once, before the loop. Lambdas that capture nothing
+ * are ignored, as the jvm hands out the same instance each time.
+ */
+public class CapturingLambdaInLoop extends BytecodeScanningDetector {
+
+    private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+    private final BugReporter bugReporter;
+    private BootstrapMethods bootstrapAtt;
+    private OpcodeStack stack;
+    private LoopTracker loops;
+    private List<LambdaSite> lambdaSites;
+
+    /**
+     * constructs a CLIL detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public CapturingLambdaInLoop(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to only look at classes that use invokedynamic, and
+     * to create and clear the stack and collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            JavaClass cls = classContext.getJavaClass();
+            if (cls.getMajor() >= Const.MAJOR_1_8) {
+                bootstrapAtt = AttributesUtils.getBootstrapAttribute(cls);
+                if (bootstrapAtt != null) {
+                    stack = new OpcodeStack();
+                    loops = new LoopTracker();
+                    lambdaSites = new ArrayList<>();
+                    super.visitClassContext(classContext);
+                }
+            }
+        } finally {
+            bootstrapAtt = null;
+            stack = null;
+            loops = null;
+            lambdaSites = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the stack and collections, and report the
+     * capturing lambdas in loops that only capture loop invariant values
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        lambdaSites.clear();
+        super.visitCode(obj);
+
+        for (LambdaSite site : lambdaSites) {
+            int depth = 0;
+            boolean invariant = true;
+            for (LoopTracker.Loop loop : loops.getLoops()) {
+                if (loop.isInLoop(site.pc)) {
+                    depth++;
+                    invariant &= isInvariant(site, loop);
+                }
+            }
+
+            if ((depth > 0) && invariant) {
+                bugReporter.reportBug(new BugInstance(this, BugType.CLIL_CAPTURING_LAMBDA_IN_LOOP.name(),
+                        (depth > 1) ? HIGH_PRIORITY : NORMAL_PRIORITY).addClass(this).addMethod(this)
+                                .addSourceLine(this, site.pc));
+            }
+        }
+    }
+
+    /**
+     * implements the visitor to collect loops, register stores, and capturing
+     * lambda creations
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            if (seen == Const.INVOKEDYNAMIC) {
+                processInvokeDynamic();
+            } else {
+                loops.sawOpcode(this, seen);
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    /**
+     * records a lambda creation if it captures values, and the registers they
+     * come from. Values that aren't from registers, constants, or final fields are
+     * treated as varying, as they can't be followed.
+     */
+    private void processInvokeDynamic() {
+        ConstantInvokeDynamic cid = (ConstantInvokeDynamic) getConstantRefOperand();
+        if (!isLambdaMetafactory(cid)) {
+            return;
+        }
+
+        int numCaptures = SignatureUtils.getNumParameters(getSigConstantOperand());
+        if ((numCaptures == 0) || (stack.getStackDepth() < numCaptures)) {
+            return;
+        }
+
+        BitSet capturedRegs = new BitSet();
+        for (int i = 0; i < numCaptures; i++) {
+            OpcodeStack.Item itm = stack.getStackItem(i);
+            int reg = itm.getRegisterNumber();
+            if (reg >= 0) {
+                capturedRegs.set(reg);
+            } else if (itm.getConstant() == null) {
+                XField field = itm.getXField();
+                if ((field == null) || !field.isFinal()) {
+                    return;
+                }
+            }
+        }
+
+        lambdaSites.add(new LambdaSite(getPC(), capturedRegs));
+    }
+
+    private boolean isLambdaMetafactory(ConstantInvokeDynamic cid) {
+        ConstantPool cp = getConstantPool();
+        int handleIndex = bootstrapAtt.getBootstrapMethods()[cid.getBootstrapMethodAttrIndex()]
+                .getBootstrapMethodRef();
+        ConstantMethodHandle cmh = (ConstantMethodHandle) cp.getConstant(handleIndex);
+        ConstantCP methodRef = (ConstantCP) cp.getConstant(cmh.getReferenceIndex());
+        return LAMBDA_METAFACTORY.equals(cp.getConstantString(methodRef.getClassIndex(), Const.CONSTANT_Class));
+    }
+
+    /**
+     * determines whether none of the registers captured by a lambda are stored to
+     * inside a loop, and so have the same value on every iteration
+     *
+     * @param site the lambda creation
+     * @param loop the loop the lambda is created in
+     * @return if the captured values are loop invariant
+     */
+    private boolean isInvariant(LambdaSite site, LoopTracker.Loop loop) {
+        for (int reg = site.capturedRegs.nextSetBit(0); reg >= 0; reg = site.capturedRegs.nextSetBit(reg + 1)) {
+            if (loops.isStoredInLoop(reg, loop)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * holds the creation of a capturing lambda, and the registers it captures
+     */
+    static class LambdaSite {
+        final int pc;
+        final BitSet capturedRegs;
+
+        LambdaSite(int sitePC, BitSet regs) {
+            pc = sitePC;
+            capturedRegs = regs;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
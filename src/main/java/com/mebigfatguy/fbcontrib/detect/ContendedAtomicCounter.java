@@ -0,0 +1,238 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for private AtomicLong or AtomicInteger fields that are only used as
+ * counters, being incremented or added to without looking at the result, and
+ * read with get() in other methods. Under contention, each update spins on a
+ * compare and swap of the one shared value, whereas a LongAdder spreads updates
+ * over several cells and only sums them when read.
+ */
+public class ContendedAtomicCounter extends BytecodeScanningDetector {
+
+    private static final Set<String> ATOMIC_CLASSES = UnmodifiableSet.create("java/util/concurrent/atomic/AtomicLong",
+            "java/util/concurrent/atomic/AtomicInteger");
+
+    private static final Set<String> UPDATE_METHODS = UnmodifiableSet.create("incrementAndGet", "getAndIncrement",
+            "decrementAndGet", "getAndDecrement", "addAndGet", "getAndAdd");
+
+    private static final Set<String> READ_METHODS = UnmodifiableSet.create("get", "longValue", "intValue",
+            "doubleValue", "floatValue", "toString");
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private String clsName;
+    private Map<String, CounterField> counterFields;
+
+    /**
+     * constructs a CAC detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public ContendedAtomicCounter(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to collect the private atomic fields of the class,
+     * and report those that are only used as counters, after all methods are
+     * seen
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            JavaClass cls = classContext.getJavaClass();
+            clsName = cls.getClassName();
+            counterFields = new HashMap<>();
+            for (Field f : cls.getFields()) {
+                if (f.isPrivate() && f.getSignature().startsWith(Values.SIG_QUALIFIED_CLASS_PREFIX)
+                        && ATOMIC_CLASSES.contains(SignatureUtils.trimSignature(f.getSignature()))) {
+                    counterFields.put(f.getName(), new CounterField(f.getSignature(), f.isStatic()));
+                }
+            }
+
+            if (counterFields.isEmpty()) {
+                return;
+            }
+
+            stack = new OpcodeStack();
+            super.visitClassContext(classContext);
+
+            for (Map.Entry<String, CounterField> entry : counterFields.entrySet()) {
+                CounterField counter = entry.getValue();
+                if (counter.isCounter()) {
+                    bugReporter.reportBug(new BugInstance(this, BugType.CAC_CONTENDED_ATOMIC_COUNTER.name(),
+                            counter.isStatic ? NORMAL_PRIORITY : LOW_PRIORITY).addClass(this)
+                                    .addField(clsName, entry.getKey(), counter.signature, counter.isStatic)
+                                    .addSourceLine(counter.firstUpdate));
+                }
+            }
+        } finally {
+            stack = null;
+            counterFields = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the opcode stack
+     *
+     * @param obj the context object of the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        super.visitCode(obj);
+    }
+
+    /**
+     * implements the visitor to count the loads of the atomic fields, and record
+     * how each load is used
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            if ((seen == Const.GETFIELD) || (seen == Const.GETSTATIC)) {
+                CounterField counter = getCounterField(getDottedClassConstantOperand(), getNameConstantOperand());
+                if (counter != null) {
+                    counter.loads++;
+                }
+            } else if ((seen == Const.INVOKEVIRTUAL) && ATOMIC_CLASSES.contains(getClassConstantOperand())) {
+                processAtomicCall();
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    private void processAtomicCall() {
+        int numArgs = SignatureUtils.getNumParameters(getSigConstantOperand());
+        if (stack.getStackDepth() <= numArgs) {
+            return;
+        }
+
+        XField xf = stack.getStackItem(numArgs).getXField();
+        if (xf == null) {
+            return;
+        }
+
+        CounterField counter = getCounterField(xf.getClassName(), xf.getName());
+        if (counter == null) {
+            return;
+        }
+
+        counter.receiverLoads++;
+        String methodName = getNameConstantOperand();
+        String method = getMethodName() + getMethodSig();
+        if (UPDATE_METHODS.contains(methodName)) {
+            int nextOpcode = getNextOpcode();
+            if ((nextOpcode == Const.POP) || (nextOpcode == Const.POP2)) {
+                counter.updatingMethods.add(method);
+                if (counter.firstUpdate == null) {
+                    counter.firstUpdate = SourceLineAnnotation.fromVisitedInstruction(this);
+                }
+            } else {
+                counter.hasOtherUse = true;
+            }
+        } else if (READ_METHODS.contains(methodName)) {
+            counter.readingMethods.add(method);
+        } else {
+            counter.hasOtherUse = true;
+        }
+    }
+
+    private CounterField getCounterField(String fieldClsName, String fieldName) {
+        if (!clsName.equals(fieldClsName)) {
+            return null;
+        }
+        return counterFields.get(fieldName);
+    }
+
+    /**
+     * holds how an atomic field is used across the methods of the class
+     */
+    static class CounterField {
+        final String signature;
+        final boolean isStatic;
+        int loads;
+        int receiverLoads;
+        boolean hasOtherUse;
+        Set<String> updatingMethods = new HashSet<>();
+        Set<String> readingMethods = new HashSet<>();
+        SourceLineAnnotation firstUpdate;
+
+        CounterField(String fieldSignature, boolean staticField) {
+            signature = fieldSignature;
+            isStatic = staticField;
+        }
+
+        /**
+         * returns whether the field is only updated blindly, and read in other
+         * methods, with every load of the field being one of those calls, so it
+         * doesn't escape
+         *
+         * @return if the field could be a LongAdder
+         */
+        boolean isCounter() {
+            if (hasOtherUse || updatingMethods.isEmpty() || (loads != receiverLoads)) {
+                return false;
+            }
+
+            for (String method : readingMethods) {
+                if (updatingMethods.contains(method)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.classfile.Code;
+
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for calls inside of loops to application methods that were found, in
+ * the first pass, to do expensive work, such as i/o, reflection, regex
+ * compilation, heavyweight allocations or lock acquisition, either themselves,
+ * or through the methods they call. The more expensive the work, and the more
+ * deeply nested the loop, the higher the priority. The expensive operation at
+ * the bottom of the call chain is reported, so that it can be hoisted or
+ * cached.
+ */
+public class CostlyMethodCallInLoop extends BytecodeScanningDetector {
+
+    private static final String JDK_PACKAGE_PREFIX = Values.JAVA + '/';
+
+    private final BugReporter bugReporter;
+    private LoopTracker loops;
+    private List<CostlyCall> costlyCalls;
+
+    /**
+     * constructs a CMCL detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public CostlyMethodCallInLoop(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the loop and call collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            loops = new LoopTracker();
+            costlyCalls = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            loops = null;
+            costlyCalls = null;
+        }
+    }
+
+    /**
+     * implements the visitor to clear the collections, and report the costly calls
+     * that are in loops
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        loops.clear();
+        costlyCalls.clear();
+        super.visitCode(obj);
+
+        for (CostlyCall call : costlyCalls) {
+            int depth = loops.getLoopDepth(call.pc);
+            if (depth > 0) {
+                int score = CostUtils.getWeight(call.costClasses) + depth - 1;
+                int priority = (score >= 4) ? HIGH_PRIORITY : ((score == 3) ? NORMAL_PRIORITY : LOW_PRIORITY);
+                bugReporter.reportBug(new BugInstance(this, BugType.CMCL_COSTLY_METHOD_CALL_IN_LOOP.name(), priority)
+                        .addClass(this).addMethod(this).addSourceLine(this, call.pc)
+                        .addString(call.description + ", nested " + depth + " loop(s) deep"));
+            }
+        }
+    }
+
+    /**
+     * implements the visitor to collect loops, and calls to costly methods
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        if (OpcodeUtils.isStandardInvoke(seen)) {
+            String clsName = getClassConstantOperand();
+            if (clsName.startsWith(JDK_PACKAGE_PREFIX)) {
+                // direct jdk calls are left to the detectors for each kind of cost
+                return;
+            }
+
+            String methodName = getNameConstantOperand();
+            String signature = getSigConstantOperand();
+
+            Statistics statistics = Statistics.getStatistics();
+            // waiting isn't work that could be moved out of the loop
+            int costClasses = statistics.getMethodCost(clsName, methodName, signature) & ~CostUtils.COST_BLOCKING;
+            if (costClasses != CostUtils.COST_NONE) {
+                String leaf = statistics.getCostLeaf(clsName, methodName, signature);
+                costlyCalls.add(new CostlyCall(getPC(), costClasses,
+                        "Call does " + CostUtils.describe(costClasses) + " through " + leaf));
+            }
+        } else {
+            loops.sawOpcode(this, seen);
+        }
+    }
+
+    /**
+     * holds a call to a costly method, and what makes it costly
+     */
+    static class CostlyCall {
+        final int pc;
+        final int costClasses;
+        final String description;
+
+        CostlyCall(int callPC, int costs, String descr) {
+            pc = callPC;
+            costClasses = costs;
+            description = descr;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
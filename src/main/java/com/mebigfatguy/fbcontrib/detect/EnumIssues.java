@@ -18,6 +18,9 @@
  */
 package com.mebigfatguy.fbcontrib.detect;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.bcel.Const;
 import org.apache.bcel.Repository;
 import org.apache.bcel.classfile.Code;
@@ -26,9 +29,11 @@ import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
 import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
 import com.mebigfatguy.fbcontrib.utils.Values;
 
 import edu.umd.cs.findbugs.BugInstance;
@@ -46,6 +51,8 @@ public class EnumIssues extends BytecodeScanningDetector {
     private boolean inEnumInitializer;
     private boolean isAnonEnum;
     private int numEnumValues;
+    private List<ValuesCall> valuesCalls;
+    private LoopTracker loops;
 
     /**
      * constructs a ENMI detector given the reporter to report bugs on.
@@ -69,20 +76,28 @@ public class EnumIssues extends BytecodeScanningDetector {
             isEnum = cls.isEnum();
             clsName = cls.getClassName();
             numEnumValues = 0;
+            valuesCalls = new ArrayList<>();
+            loops = new LoopTracker();
             super.visitClassContext(classContext);
         } finally {
             stack = null;
+            valuesCalls = null;
+            loops = null;
         }
     }
 
     /**
-     * overrides the visitor to reset the stack
+     * overrides the visitor to reset the stack, and to report calls to an enum's
+     * values() method that are made in a loop, or in a static method that looks up
+     * an enum value by looping over them
      *
      * @param obj the context object of the currently parsed code block
      */
     @Override
     public void visitCode(Code obj) {
         stack.resetForMethodEntry(this);
+        valuesCalls.clear();
+        loops.clear();
 
         inEnumInitializer = isEnum && getMethod().getName().equals(Values.STATIC_INITIALIZER);
         isAnonEnum = false;
@@ -93,6 +108,19 @@ public class EnumIssues extends BytecodeScanningDetector {
             bugReporter.reportBug(new BugInstance(this, BugType.ENMI_ONE_ENUM_VALUE.name(), NORMAL_PRIORITY)
                     .addClass(this).addMethod(this).addSourceLine(this));
         }
+
+        for (ValuesCall call : valuesCalls) {
+            int priority;
+            if (loops.isInLoop(call.pc)) {
+                priority = NORMAL_PRIORITY;
+            } else if (call.isLookup && !loops.isEmpty()) {
+                priority = LOW_PRIORITY;
+            } else {
+                continue;
+            }
+            bugReporter.reportBug(new BugInstance(this, BugType.ENMI_REPEATED_VALUES_CALL.name(), priority)
+                    .addClass(this).addMethod(this).addSourceLine(this, call.pc));
+        }
     }
 
     @Override
@@ -165,6 +193,14 @@ public class EnumIssues extends BytecodeScanningDetector {
                         }
                     }
                     break;
+
+                case Const.INVOKESTATIC:
+                    processValuesCall();
+                    break;
+
+                default:
+                    loops.sawOpcode(this, seen);
+                    break;
                 }
             }
         } catch (ClassNotFoundException cnfe) {
@@ -173,4 +209,49 @@ public class EnumIssues extends BytecodeScanningDetector {
             stack.sawOpcode(this, seen);
         }
     }
+
+    /**
+     * records calls to an enum's values() method, which clones the array of enum
+     * values each time, outside of static initializers, where the result would be
+     * cached. A call from a static method that returns that enum is taken to be a
+     * lookup, such as a fromCode(int) method.
+     *
+     * @throws ClassNotFoundException if the enum class can't be found
+     */
+    private void processValuesCall() throws ClassNotFoundException {
+        if (!"values".equals(getNameConstantOperand()) || Values.STATIC_INITIALIZER.equals(getMethodName())) {
+            return;
+        }
+
+        String enumCls = getClassConstantOperand();
+        String enumSig = SignatureUtils.classToSignature(enumCls);
+        if (!getSigConstantOperand().equals("()" + Values.SIG_ARRAY_PREFIX + enumSig)) {
+            return;
+        }
+
+        if (Repository.lookupClass(enumCls).isEnum()) {
+            boolean isLookup = getMethod().isStatic()
+                    && enumSig.equals(SignatureUtils.getReturnSignature(getMethodSig()));
+            valuesCalls.add(new ValuesCall(getPC(), isLookup));
+        }
+    }
+
+    /**
+     * holds the location of a call to an enum's values() method, and whether it is
+     * made from a static lookup method
+     */
+    static class ValuesCall {
+        final int pc;
+        final boolean isLookup;
+
+        ValuesCall(int callPC, boolean lookup) {
+            pc = callPC;
+            isLookup = lookup;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for exceptions used for control flow inside of loops, where an
+ * exception is thrown, and caught by a handler in the same method, inside the
+ * same loop, or where a parse method, or an element accessor, is wrapped in a
+ * try block in a loop, whose catch handles the expected failure. Building an
+ * exception fills in its stack trace, which is far more expensive than
+ * checking the condition up front.
+ */
+public class ExceptionControlFlowInLoop extends BytecodeScanningDetector {
+
+    private static final Set<String> NUMBER_CLASSES = UnmodifiableSet.create("java/lang/Integer", "java/lang/Long",
+            "java/lang/Short", "java/lang/Byte", "java/lang/Double", "java/lang/Float");
+
+    private static final Set<String> PARSE_EXCEPTIONS = UnmodifiableSet.create("java.lang.NumberFormatException");
+
+    private static final Set<String> NO_ELEMENT_EXCEPTIONS = UnmodifiableSet
+            .create("java.util.NoSuchElementException");
+
+    private static final Set<String> SCANNER_EXCEPTIONS = UnmodifiableSet.create("java.util.InputMismatchException",
+            "java.util.NoSuchElementException");
+
+    private static final String SLASHED_SCANNER = "java/util/Scanner";
+
+    private static final Set<String> ELEMENT_CLASSES = UnmodifiableSet.create("java/util/Iterator",
+            "java/util/ListIterator", "java/util/Enumeration", "java/util/Scanner", "java/util/Optional",
+            "java/util/Deque", "java/util/Queue", "java/util/LinkedList", "java/util/ArrayDeque",
+            "java/util/StringTokenizer");
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private CodeException[] exceptionTable;
+    private LoopTracker loops;
+    private Map<Integer, String> thrownTypes;
+    private List<GuardedCall> guardedCalls;
+
+    /**
+     * constructs a ECFL detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public ExceptionControlFlowInLoop(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the stack and collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            stack = new OpcodeStack();
+            loops = new LoopTracker();
+            thrownTypes = new HashMap<>();
+            guardedCalls = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            stack = null;
+            exceptionTable = null;
+            loops = null;
+            thrownTypes = null;
+            guardedCalls = null;
+        }
+    }
+
+    /**
+     * implements the visitor to only look at methods with catch blocks, and report
+     * the exceptions that are thrown and caught in the same loop
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        exceptionTable = obj.getExceptionTable();
+        if ((exceptionTable == null) || (exceptionTable.length == 0)) {
+            return;
+        }
+
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        thrownTypes.clear();
+        guardedCalls.clear();
+        super.visitCode(obj);
+
+        if (loops.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Integer, String> entry : thrownTypes.entrySet()) {
+            int throwPC = entry.getKey().intValue();
+            CodeException handler = findHandler(throwPC, entry.getValue(), null);
+            if ((handler != null) && inSameLoop(throwPC, handler.getHandlerPC())) {
+                bugReporter.reportBug(new BugInstance(this, BugType.ECFL_THROW_CAUGHT_IN_SAME_LOOP.name(),
+                        NORMAL_PRIORITY).addClass(this).addMethod(this).addSourceLine(this, throwPC)
+                                .addString(entry.getValue()));
+            }
+        }
+
+        for (GuardedCall call : guardedCalls) {
+            CodeException handler = findHandler(call.pc, null, call.expectedExceptions);
+            if ((handler != null) && inSameLoop(call.pc, handler.getHandlerPC())) {
+                bugReporter.reportBug(new BugInstance(this, BugType.ECFL_EXPECTED_EXCEPTION_CAUGHT_IN_LOOP.name(),
+                        NORMAL_PRIORITY).addClass(this).addMethod(this).addSourceLine(this, call.pc)
+                                .addString(call.methodDescription));
+            }
+        }
+    }
+
+    /**
+     * implements the visitor to collect loops, throws of newly built exceptions,
+     * and calls that are commonly guarded by catching their failure
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            if (seen == Const.ATHROW) {
+                if (stack.getStackDepth() > 0) {
+                    OpcodeStack.Item itm = stack.getStackItem(0);
+                    // preallocated exceptions, held in fields, don't pay for a stack trace,
+                    // and exceptions in registers are usually rethrows of caught ones
+                    String sig = itm.getSignature();
+                    if ((itm.getXField() == null) && (itm.getRegisterNumber() < 0) && sig.startsWith("L")) {
+                        thrownTypes.put(Integer.valueOf(getPC()), SignatureUtils.stripSignature(sig));
+                    }
+                }
+            } else if ((seen == Const.INVOKESTATIC) || (seen == Const.INVOKEVIRTUAL)
+                    || (seen == Const.INVOKEINTERFACE)) {
+                processCall();
+            } else {
+                loops.sawOpcode(this, seen);
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    private void processCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+
+        if (NUMBER_CLASSES.contains(clsName)) {
+            if ((methodName.startsWith("parse") || "valueOf".equals(methodName) || "decode".equals(methodName))
+                    && getSigConstantOperand().startsWith("(Ljava/lang/String;")) {
+                guardedCalls.add(new GuardedCall(getPC(), PARSE_EXCEPTIONS,
+                        getDottedClassConstantOperand() + '.' + methodName));
+            }
+        } else if (ELEMENT_CLASSES.contains(clsName)) {
+            if (methodName.startsWith("next") || methodName.startsWith("get") || "element".equals(methodName)
+                    || "remove".equals(methodName) || "pop".equals(methodName)) {
+                guardedCalls.add(new GuardedCall(getPC(),
+                        SLASHED_SCANNER.equals(clsName) ? SCANNER_EXCEPTIONS : NO_ELEMENT_EXCEPTIONS,
+                        getDottedClassConstantOperand() + '.' + methodName));
+            }
+        }
+    }
+
+    /**
+     * finds the catch block that handles an exception thrown at a location. For
+     * throws, the exception on the stack is matched against the catch types, and
+     * for calls, the catch type must be one of the exceptions the call is expected
+     * to throw, or a parent of one, such as Exception or RuntimeException. Finally
+     * blocks stop the search, as they rethrow.
+     *
+     * @param pc                 the location of the throw or call
+     * @param thrownType         the dotted exception thrown, or null for a call
+     * @param expectedExceptions the dotted exceptions a call is expected to throw,
+     *                           or null for a throw
+     * @return the handling catch block, or null if not handled in this method
+     */
+    private CodeException findHandler(int pc, String thrownType, Set<String> expectedExceptions) {
+        for (CodeException ce : exceptionTable) {
+            if ((pc < ce.getStartPC()) || (pc >= ce.getEndPC())) {
+                continue;
+            }
+
+            int catchType = ce.getCatchType();
+            if (catchType == 0) {
+                return null;
+            }
+
+            String catchName = getConstantPool().getConstantString(catchType, Const.CONSTANT_Class).replace('/', '.');
+            if (expectedExceptions != null) {
+                for (String expectedException : expectedExceptions) {
+                    if (isCaughtBy(expectedException, catchName)) {
+                        return ce;
+                    }
+                }
+            } else if (isCaughtBy(thrownType, catchName)) {
+                return ce;
+            }
+        }
+        return null;
+    }
+
+    private boolean isCaughtBy(String thrownType, String catchName) {
+        if (thrownType.equals(catchName)) {
+            return true;
+        }
+
+        try {
+            JavaClass thrownClass = Repository.lookupClass(thrownType);
+            return thrownClass.instanceOf(Repository.lookupClass(catchName));
+        } catch (ClassNotFoundException cnfe) {
+            bugReporter.reportMissingClass(cnfe);
+            return false;
+        }
+    }
+
+    private boolean inSameLoop(int pc, int handlerPC) {
+        for (LoopTracker.Loop loop : loops.getLoops()) {
+            if (loop.isInLoop(pc) && loop.isInLoop(handlerPC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * holds a call that is commonly guarded by catching the exception it throws
+     * when its input is bad, or it has no more elements
+     */
+    static class GuardedCall {
+        final int pc;
+        final Set<String> expectedExceptions;
+        final String methodDescription;
+
+        GuardedCall(int callPC, Set<String> exceptions, String description) {
+            pc = callPC;
+            expectedExceptions = exceptions;
+            methodDescription = description;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
@@ -31,7 +31,9 @@ import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
 
+import com.mebigfatguy.fbcontrib.utils.BoundedBugReporter;
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.GeneratedCodeUtils;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
@@ -52,7 +54,7 @@ import edu.umd.cs.findbugs.ba.SourceFinder;
  * method, you should consider defining these parameters as final.
  */
 public class FinalParameters extends BytecodeScanningDetector {
-    private final BugReporter bugReporter;
+    private final BoundedBugReporter bugReporter;
     private BitSet changedParms;
     private String methodName;
     private int firstLocalReg;
@@ -67,7 +69,7 @@ public class FinalParameters extends BytecodeScanningDetector {
      * @param bugReporter the sync of bug reports
      */
     public FinalParameters(final BugReporter bugReporter) {
-        this.bugReporter = bugReporter;
+        this.bugReporter = new BoundedBugReporter(bugReporter);
     }
 
     /**
@@ -77,6 +79,10 @@ public class FinalParameters extends BytecodeScanningDetector {
      */
     @Override
     public void visitClassContext(ClassContext classContext) {
+        if (GeneratedCodeUtils.shouldSkip(this, classContext.getJavaClass())) {
+            return;
+        }
+
         srcInited = false;
         super.visitClassContext(classContext);
     }
@@ -243,4 +249,14 @@ public class FinalParameters extends BytecodeScanningDetector {
         }
         return String.valueOf(reg);
     }
+
+    /**
+     * implements the detector to note how many generated classes were skipped, and
+     * how many findings were suppressed by the reporting limits
+     */
+    @Override
+    public void report() {
+        GeneratedCodeUtils.reportSkippedClasses();
+        bugReporter.reportSuppressedBugs();
+    }
 }
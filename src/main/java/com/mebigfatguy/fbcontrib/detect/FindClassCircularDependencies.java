@@ -18,10 +18,14 @@
  */
 package com.mebigfatguy.fbcontrib.detect;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -36,6 +40,7 @@ import org.apache.bcel.classfile.ElementValue;
 import org.apache.bcel.classfile.JavaClass;
 
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.ReportExecutor;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.ToString;
 import com.mebigfatguy.fbcontrib.utils.Values;
@@ -175,32 +180,145 @@ public class FindClassCircularDependencies extends BytecodeScanningDetector {
 
     @Override
     public void report() {
-        removeDependencyLeaves();
+        removeDependencyLeaves(dependencyGraph);
 
-        LoopFinder lf = new LoopFinder();
+        List<List<Set<String>>> componentLoops = ReportExecutor.map(findStronglyConnectedComponents(),
+                this::findLoops);
 
-        while (!dependencyGraph.isEmpty()) {
-            String clsName = dependencyGraph.keySet().iterator().next();
-            Set<String> loop = lf.findLoop(dependencyGraph, clsName);
-            boolean pruneLeaves;
-            if (loop != null) {
+        for (List<Set<String>> loops : componentLoops) {
+            for (Set<String> loop : loops) {
                 BugInstance bug = new BugInstance(this, BugType.FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY.name(),
                         NORMAL_PRIORITY);
                 for (String loopCls : loop) {
                     bug.addClass(loopCls);
                 }
                 bugReporter.reportBug(bug);
-                pruneLeaves = removeLoopLinks(loop);
+            }
+        }
+
+        dependencyGraph.clear();
+    }
+
+    /**
+     * splits the dependency graph into its strongly connected components, as no
+     * loop can span two components, and so each can be searched on its own.
+     * Components of only one class are dropped as they can't hold a loop. This is
+     * an iterative version of Tarjan's algorithm, so that long dependency chains
+     * don't blow the stack.
+     *
+     * @return the components with more than one class
+     */
+    private List<Set<String>> findStronglyConnectedComponents() {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> lowLink = new HashMap<>();
+        Deque<String> componentStack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        Deque<String> callStack = new ArrayDeque<>();
+        Deque<Iterator<String>> edgeStack = new ArrayDeque<>();
+        List<Set<String>> components = new ArrayList<>();
+
+        for (String root : dependencyGraph.keySet()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+
+            visitNode(root, index, lowLink, componentStack, onStack, callStack, edgeStack);
+            while (!callStack.isEmpty()) {
+                String node = callStack.peek();
+                Iterator<String> edges = edgeStack.peek();
+                if (edges.hasNext()) {
+                    String dependency = edges.next();
+                    if (!dependencyGraph.containsKey(dependency)) {
+                        continue;
+                    }
+                    if (!index.containsKey(dependency)) {
+                        visitNode(dependency, index, lowLink, componentStack, onStack, callStack, edgeStack);
+                    } else if (onStack.contains(dependency)) {
+                        lowerLink(lowLink, node, index.get(dependency));
+                    }
+                    continue;
+                }
+
+                callStack.pop();
+                edgeStack.pop();
+                if (!callStack.isEmpty()) {
+                    String parent = callStack.peek();
+                    lowerLink(lowLink, parent, lowLink.get(node));
+                }
+
+                if (lowLink.get(node).equals(index.get(node))) {
+                    Set<String> component = new HashSet<>();
+                    String member;
+                    do {
+                        member = componentStack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (!member.equals(node));
+
+                    if (component.size() > 1) {
+                        components.add(component);
+                    }
+                }
+            }
+        }
+
+        return components;
+    }
+
+    private void visitNode(String node, Map<String, Integer> index, Map<String, Integer> lowLink,
+            Deque<String> componentStack, Set<String> onStack, Deque<String> callStack,
+            Deque<Iterator<String>> edgeStack) {
+        Integer nodeIndex = Integer.valueOf(index.size());
+        index.put(node, nodeIndex);
+        lowLink.put(node, nodeIndex);
+        componentStack.push(node);
+        onStack.add(node);
+        callStack.push(node);
+        edgeStack.push(dependencyGraph.get(node).iterator());
+    }
+
+    private static void lowerLink(Map<String, Integer> lowLink, String node, Integer link) {
+        if (link.intValue() < lowLink.get(node).intValue()) {
+            lowLink.put(node, link);
+        }
+    }
+
+    /**
+     * finds the loops in one strongly connected component, working on a copy of
+     * that part of the dependency graph, so that components can be searched in
+     * parallel.
+     *
+     * @param component the classes of the component
+     * @return the loops found
+     */
+    private List<Set<String>> findLoops(Set<String> component) {
+        Map<String, Set<String>> graph = new HashMap<>();
+        for (String clsName : component) {
+            Set<String> dependencies = new HashSet<>(dependencyGraph.get(clsName));
+            dependencies.retainAll(component);
+            graph.put(clsName, dependencies);
+        }
+
+        List<Set<String>> loops = new ArrayList<>();
+        LoopFinder lf = new LoopFinder();
+
+        while (!graph.isEmpty()) {
+            String clsName = graph.keySet().iterator().next();
+            Set<String> loop = lf.findLoop(graph, clsName);
+            boolean pruneLeaves;
+            if (loop != null) {
+                loops.add(new LinkedHashSet<>(loop));
+                pruneLeaves = removeLoopLinks(graph, loop);
             } else {
-                dependencyGraph.remove(clsName);
+                graph.remove(clsName);
                 pruneLeaves = true;
             }
             if (pruneLeaves) {
-                removeDependencyLeaves();
+                removeDependencyLeaves(graph);
             }
         }
 
-        dependencyGraph.clear();
+        return loops;
     }
 
     private boolean isStaticChild(String child, String parent) {
@@ -212,18 +330,18 @@ public class FindClassCircularDependencies extends BytecodeScanningDetector {
         return ((child.charAt(parentLength) == '.') && (child.indexOf('.', parentLength + 1) < 0));
     }
 
-    private void removeDependencyLeaves() {
+    private static void removeDependencyLeaves(Map<String, Set<String>> graph) {
         boolean changed = true;
         while (changed) {
             changed = false;
-            Iterator<Set<String>> it = dependencyGraph.values().iterator();
+            Iterator<Set<String>> it = graph.values().iterator();
             while (it.hasNext()) {
                 Set<String> dependencies = it.next();
 
                 boolean foundClass = false;
                 Iterator<String> dit = dependencies.iterator();
                 while (dit.hasNext()) {
-                    foundClass = dependencyGraph.containsKey(dit.next());
+                    foundClass = graph.containsKey(dit.next());
                     if (!foundClass) {
                         dit.remove();
                         changed = true;
@@ -237,13 +355,13 @@ public class FindClassCircularDependencies extends BytecodeScanningDetector {
         }
     }
 
-    private boolean removeLoopLinks(Set<String> loop) {
+    private static boolean removeLoopLinks(Map<String, Set<String>> graph, Set<String> loop) {
         Set<String> dependencies = null;
         for (String clsName : loop) {
             if (dependencies != null) {
                 dependencies.remove(clsName);
             }
-            dependencies = dependencyGraph.get(clsName);
+            dependencies = graph.get(clsName);
         }
         if (dependencies != null) {
             dependencies.remove(loop.iterator().next());
@@ -253,7 +371,7 @@ public class FindClassCircularDependencies extends BytecodeScanningDetector {
         Iterator<String> cIt = loop.iterator();
         while (cIt.hasNext()) {
             String clsName = cIt.next();
-            dependencies = dependencyGraph.get(clsName);
+            dependencies = graph.get(clsName);
             if (dependencies.isEmpty()) {
                 cIt.remove();
                 removedClass = true;
@@ -19,15 +19,16 @@
 package com.mebigfatguy.fbcontrib.detect;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
 import org.apache.bcel.Const;
-import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.BootstrapMethod;
 import org.apache.bcel.classfile.BootstrapMethods;
 import org.apache.bcel.classfile.Code;
@@ -35,12 +36,14 @@ import org.apache.bcel.classfile.Constant;
 import org.apache.bcel.classfile.ConstantCP;
 import org.apache.bcel.classfile.ConstantInvokeDynamic;
 import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantMethodType;
 import org.apache.bcel.classfile.ConstantNameAndType;
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.Type;
 
+import com.mebigfatguy.fbcontrib.utils.AttributesUtils;
 import com.mebigfatguy.fbcontrib.utils.BugType;
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
@@ -49,6 +52,7 @@ import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.StopOpcodeParsingException;
 import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
 import com.mebigfatguy.fbcontrib.utils.Values;
 
 import edu.umd.cs.findbugs.BugInstance;
@@ -79,6 +83,14 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
             SignatureBuilder.SIG_VOID_TO_BOOLEAN);
     private static final FQMethod GET = new FQMethod("java/util/List", "get", SignatureBuilder.SIG_INT_TO_OBJECT);
 
+    private static final String SLASHED_STREAM = "java/util/stream/Stream";
+    private static final String SIG_FUNCTION = "Ljava/util/function/Function;";
+
+    private static final Set<String> BOXED_PASS_THROUGH_METHODS = UnmodifiableSet.create("filter", "sorted",
+            "distinct", "limit", "skip", "peek");
+    private static final Set<String> BOXED_TERMINAL_METHODS = UnmodifiableSet.create("reduce", "max", "min",
+            "mapToInt", "mapToLong", "mapToDouble");
+
     enum ParseState {
         NORMAL, LAMBDA;
     }
@@ -88,7 +100,44 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
     }
 
     enum FIIUserValue {
-        COLLECT_ITEM, FILTER_ITEM, FINDFIRST_ITEM;
+        COLLECT_ITEM, FILTER_ITEM, FINDFIRST_ITEM, BOXED_INT_ITEM, BOXED_LONG_ITEM, BOXED_DOUBLE_ITEM,
+        FILTER_BOXED_INT_ITEM, FILTER_BOXED_LONG_ITEM, FILTER_BOXED_DOUBLE_ITEM;
+    }
+
+    /**
+     * the boxed values of streams, or functions, that produce boxed elements, and
+     * what each such element costs
+     */
+    private static final Map<FIIUserValue, String> BOXED_ELEMENT_COSTS = new EnumMap<>(FIIUserValue.class);
+    static {
+        BOXED_ELEMENT_COSTS.put(FIIUserValue.BOXED_INT_ITEM, "an Integer, about 16 bytes, per element");
+        BOXED_ELEMENT_COSTS.put(FIIUserValue.BOXED_LONG_ITEM, "a Long, about 24 bytes, per element");
+        BOXED_ELEMENT_COSTS.put(FIIUserValue.BOXED_DOUBLE_ITEM, "a Double, about 24 bytes, per element");
+    }
+
+    /**
+     * the user values of filtered streams of boxed numbers, so that a filter is
+     * both checked for combining, and still known to hold boxed elements
+     */
+    private static final Map<FIIUserValue, FIIUserValue> FILTERED_BOXED_VALUES = new EnumMap<>(FIIUserValue.class);
+    static {
+        FILTERED_BOXED_VALUES.put(FIIUserValue.BOXED_INT_ITEM, FIIUserValue.FILTER_BOXED_INT_ITEM);
+        FILTERED_BOXED_VALUES.put(FIIUserValue.BOXED_LONG_ITEM, FIIUserValue.FILTER_BOXED_LONG_ITEM);
+        FILTERED_BOXED_VALUES.put(FIIUserValue.BOXED_DOUBLE_ITEM, FIIUserValue.FILTER_BOXED_DOUBLE_ITEM);
+    }
+
+    private static final Map<String, FIIUserValue> BOXED_SIGNATURES = new HashMap<>();
+    static {
+        BOXED_SIGNATURES.put("Ljava/lang/Integer;", FIIUserValue.BOXED_INT_ITEM);
+        BOXED_SIGNATURES.put("Ljava/lang/Long;", FIIUserValue.BOXED_LONG_ITEM);
+        BOXED_SIGNATURES.put("Ljava/lang/Double;", FIIUserValue.BOXED_DOUBLE_ITEM);
+    }
+
+    private static final Map<String, FIIUserValue> PRIMITIVE_STREAMS = new HashMap<>();
+    static {
+        PRIMITIVE_STREAMS.put("java/util/stream/IntStream", FIIUserValue.BOXED_INT_ITEM);
+        PRIMITIVE_STREAMS.put("java/util/stream/LongStream", FIIUserValue.BOXED_LONG_ITEM);
+        PRIMITIVE_STREAMS.put("java/util/stream/DoubleStream", FIIUserValue.BOXED_DOUBLE_ITEM);
     }
 
     private BugReporter bugReporter;
@@ -111,7 +160,7 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
         try {
             cls = classContext.getJavaClass();
             if (cls.getMajor() >= Const.MAJOR_1_8) {
-                bootstrapAtt = getBootstrapAttribute(cls);
+                bootstrapAtt = AttributesUtils.getBootstrapAttribute(cls);
                 if (bootstrapAtt != null) {
                     stack = new OpcodeStack();
                     functionalInterfaceInfo = new HashMap<>();
@@ -309,9 +358,11 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
                                         || OpcodeUtils.isALoad(lastOp));
                         fiis.add(fii);
                     }
+                    userValue = getBoxingFunctionValue(cid);
                     break;
 
                 case Const.INVOKEINTERFACE:
+                    userValue = processBoxedStreamCall();
                     QMethod m = new QMethod(getNameConstantOperand(), getSigConstantOperand());
 
                     if (CONTAINS.equals(m)) {
@@ -340,17 +391,18 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
                         } else if (FILTER.equals(fqm)) {
                             if (stack.getStackDepth() > 1) {
                                 OpcodeStack.Item itm = stack.getStackItem(1);
-                                if (itm.getUserValue() == FIIUserValue.FILTER_ITEM && itm.getRegisterNumber() < 0) {
+                                if (isFilterItem(itm.getUserValue()) && itm.getRegisterNumber() < 0) {
                                     bugReporter.reportBug(
                                             new BugInstance(this, BugType.FII_COMBINE_FILTERS.name(), LOW_PRIORITY)
                                                     .addClass(this).addMethod(this).addSourceLine(this));
                                 }
                             }
-                            userValue = FIIUserValue.FILTER_ITEM;
+                            userValue = (userValue == null) ? FIIUserValue.FILTER_ITEM
+                                    : FILTERED_BOXED_VALUES.get(userValue);
                         } else if (FINDFIRST.equals(fqm)) {
                             if (stack.getStackDepth() > 0) {
                                 OpcodeStack.Item itm = stack.getStackItem(0);
-                                if (itm.getUserValue() == FIIUserValue.FILTER_ITEM) {
+                                if (isFilterItem(itm.getUserValue())) {
                                     userValue = FIIUserValue.FINDFIRST_ITEM;
                                 }
                             }
@@ -395,17 +447,105 @@ public class FunctionalInterfaceIssues extends BytecodeScanningDetector {
         }
     }
 
+    /**
+     * returns the boxed value for a lambda or method reference that is a Function
+     * returning a boxed number, as found from the instantiated method type given to
+     * the lambda metafactory
+     *
+     * @param cid the invokedynamic constant of the lambda
+     * @return the boxed user value, or null if the function doesn't box
+     */
     @Nullable
-    private BootstrapMethods getBootstrapAttribute(JavaClass clz) {
-        for (Attribute att : clz.getAttributes()) {
-            if (att instanceof BootstrapMethods) {
-                return (BootstrapMethods) att;
-            }
+    private FIIUserValue getBoxingFunctionValue(ConstantInvokeDynamic cid) {
+        ConstantPool cp = getConstantPool();
+        ConstantNameAndType nameAndType = (ConstantNameAndType) cp.getConstant(cid.getNameAndTypeIndex());
+        if (!nameAndType.getSignature(cp).endsWith(SIG_FUNCTION)) {
+            return null;
+        }
+
+        int[] bsArgs = bootstrapAtt.getBootstrapMethods()[cid.getBootstrapMethodAttrIndex()].getBootstrapArguments();
+        if (bsArgs.length < 3) {
+            return null;
+        }
+
+        Constant c = cp.getConstant(bsArgs[2]);
+        if (!(c instanceof ConstantMethodType)) {
+            return null;
+        }
+
+        String instantiatedSig = cp.getConstantString(((ConstantMethodType) c).getDescriptorIndex(),
+                Const.CONSTANT_Utf8);
+        return BOXED_SIGNATURES.get(SignatureUtils.getReturnSignature(instantiatedSig));
+    }
+
+    /**
+     * tracks streams of boxed numbers, as made by boxed() or map with a boxing
+     * function, through the stream calls, and reports reductions on them, or on
+     * reductions with a boxed identity, that would be better done on a primitive
+     * stream
+     *
+     * @return the boxed user value of the resulting stream, or null
+     */
+    @Nullable
+    private FIIUserValue processBoxedStreamCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+
+        FIIUserValue primitiveStreamValue = PRIMITIVE_STREAMS.get(clsName);
+        if (primitiveStreamValue != null) {
+            return "boxed".equals(methodName) ? primitiveStreamValue : null;
         }
 
+        if (!SLASHED_STREAM.equals(clsName)) {
+            return null;
+        }
+
+        int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
+        if (stack.getStackDepth() <= numParms) {
+            return null;
+        }
+
+        if ("map".equals(methodName)) {
+            return getBoxedValue(stack.getStackItem(0).getUserValue());
+        }
+
+        FIIUserValue boxedValue = getBoxedValue(stack.getStackItem(numParms).getUserValue());
+        if ((boxedValue == null) && "reduce".equals(methodName) && (numParms >= 2)) {
+            boxedValue = BOXED_SIGNATURES.get(stack.getStackItem(numParms - 1).getSignature());
+        }
+
+        if (boxedValue == null) {
+            return null;
+        }
+
+        if (BOXED_PASS_THROUGH_METHODS.contains(methodName)) {
+            return boxedValue;
+        }
+
+        if (BOXED_TERMINAL_METHODS.contains(methodName)) {
+            bugReporter.reportBug(new BugInstance(this, BugType.FII_USE_PRIMITIVE_STREAM.name(), NORMAL_PRIORITY)
+                    .addClass(this).addMethod(this).addSourceLine(this).addString(BOXED_ELEMENT_COSTS.get(boxedValue)));
+        }
+        return null;
+    }
+
+    @Nullable
+    private static FIIUserValue getBoxedValue(Object userValue) {
+        if (BOXED_ELEMENT_COSTS.containsKey(userValue)) {
+            return (FIIUserValue) userValue;
+        }
+        for (Map.Entry<FIIUserValue, FIIUserValue> entry : FILTERED_BOXED_VALUES.entrySet()) {
+            if (entry.getValue() == userValue) {
+                return entry.getKey();
+            }
+        }
         return null;
     }
 
+    private static boolean isFilterItem(Object userValue) {
+        return (userValue == FIIUserValue.FILTER_ITEM) || FILTERED_BOXED_VALUES.containsValue(userValue);
+    }
+
     @Nullable
     private ConstantMethodHandle getMethodHandle(int bootstrapIndex) {
         BootstrapMethod bsMethod = bootstrapAtt.getBootstrapMethods()[bootstrapIndex];
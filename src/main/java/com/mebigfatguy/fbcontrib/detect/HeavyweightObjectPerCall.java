@@ -0,0 +1,260 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for objects that are expensive to create, such as json mappers, xml
+ * factories, message digests, ciphers, date formats and http clients, being
+ * created in methods, constructors of short lived classes, or loops, so that
+ * they are created again for every call. Thread safe types should be created
+ * once and shared, while the others should be kept per thread, or pooled.
+ * <p>
+ * The catalog of types is the heavyweight allocation catalog of CostUtils, so
+ * that this detector and the costly call detectors agree on what is expensive.
+ * It can be extended with the system property fb-contrib.hopc.types, as a comma
+ * separated list of entries, or with a properties file named by the system
+ * property fb-contrib.hopc.catalog, with an entry per line. An entry has the
+ * form class[#method]=shared|confined, where the class is dotted, the method is
+ * the static factory method that creates the object, defaulting to the
+ * constructor, and shared or confined tells whether the object is safe to share
+ * between threads. A catalog file that can't be read is ignored.
+ * </p>
+ */
+public class HeavyweightObjectPerCall extends BytecodeScanningDetector {
+
+    /** the number of callers of a constructor at which its class is considered short lived */
+    private static final int FREQUENT_CALLERS = 3;
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private LoopTracker loops;
+    private List<Creation> creations;
+    private Creation pendingCreation;
+    private boolean isTaskClass;
+
+    /**
+     * constructs a HOPC detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public HeavyweightObjectPerCall(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the collections, and note whether
+     * the class is a task, which is typically created per unit of work
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            JavaClass cls = classContext.getJavaClass();
+            isTaskClass = false;
+            for (String infName : cls.getInterfaceNames()) {
+                if ("java.lang.Runnable".equals(infName) || "java.util.concurrent.Callable".equals(infName)) {
+                    isTaskClass = true;
+                    break;
+                }
+            }
+
+            stack = new OpcodeStack();
+            loops = new LoopTracker();
+            creations = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            stack = null;
+            loops = null;
+            creations = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the collections, and report the heavyweight
+     * objects created per call. Static initializers are skipped, as are constructors
+     * of classes that don't look to be short lived.
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        String methodName = getMethodName();
+        if (Values.STATIC_INITIALIZER.equals(methodName)) {
+            return;
+        }
+
+        boolean isConstructor = Values.CONSTRUCTOR.equals(methodName);
+        if (isConstructor && !isTaskClass && (Statistics.getStatistics()
+                .getMethodStatistics(getClassName(), methodName, getMethodSig()).getNumCallers() < FREQUENT_CALLERS)) {
+            return;
+        }
+
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        creations.clear();
+        pendingCreation = null;
+        super.visitCode(obj);
+
+        for (Creation creation : creations) {
+            int priority;
+            if (loops.isInLoop(creation.pc)) {
+                priority = HIGH_PRIORITY;
+            } else if (isConstructor || creation.isReturned) {
+                priority = LOW_PRIORITY;
+            } else {
+                priority = NORMAL_PRIORITY;
+            }
+
+            BugType bugType = creation.isShared ? BugType.HOPC_SHAREABLE_OBJECT_CREATED_PER_CALL
+                    : BugType.HOPC_THREAD_CONFINED_OBJECT_CREATED_PER_CALL;
+            bugReporter.reportBug(new BugInstance(this, bugType.name(), priority).addClass(this).addMethod(this)
+                    .addSourceLine(this, creation.pc).addString(creation.typeName));
+        }
+    }
+
+    /**
+     * implements the visitor to look for the creation of heavyweight objects, and
+     * to collect loops
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            stack.precomputation(this);
+            processOpcode(seen);
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    private void processOpcode(int seen) {
+        if (pendingCreation != null) {
+            processStoreOfCreation(seen);
+        }
+
+        if (OpcodeUtils.isStandardInvoke(seen)) {
+            String clsName = getClassConstantOperand();
+            Boolean isShared = CostUtils.getHeavyweightSharing(clsName, getNameConstantOperand());
+            if ((isShared != null) && !isSuperConstructorCall(seen)) {
+                String typeName = getSigConstantOperand();
+                typeName = typeName.substring(typeName.indexOf(')') + 1);
+                if (typeName.startsWith(Values.SIG_QUALIFIED_CLASS_PREFIX)) {
+                    typeName = typeName.substring(1, typeName.length() - 1);
+                } else {
+                    typeName = clsName;
+                }
+                pendingCreation = new Creation(getPC(), typeName.replace('/', '.'), isShared.booleanValue());
+            }
+        } else {
+            loops.sawOpcode(this, seen);
+        }
+    }
+
+    /**
+     * returns whether the call is a constructor's call to its super or this
+     * constructor, which initializes the object being built, rather than creating
+     * another one
+     *
+     * @param seen the invoke opcode of the call
+     * @return if the call is a super or this constructor call
+     */
+    private boolean isSuperConstructorCall(int seen) {
+        if ((seen != Const.INVOKESPECIAL) || !Values.CONSTRUCTOR.equals(getNameConstantOperand())
+                || !Values.CONSTRUCTOR.equals(getMethodName())) {
+            return false;
+        }
+
+        int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
+        return (stack.getStackDepth() > numParms) && (stack.getStackItem(numParms).getRegisterNumber() == 0);
+    }
+
+    /**
+     * decides whether the object just created is a per call object, based on where
+     * it is put. Objects stored in static fields, or in instance fields outside of
+     * constructors, are lazily initialized, and objects returned from lambdas or
+     * ThreadLocal.initialValue are the cure, not the problem.
+     *
+     * @param seen the opcode following the creation of the object
+     */
+    private void processStoreOfCreation(int seen) {
+        Creation creation = pendingCreation;
+        pendingCreation = null;
+
+        if (seen == Const.PUTSTATIC) {
+            return;
+        }
+        if ((seen == Const.PUTFIELD) && !Values.CONSTRUCTOR.equals(getMethodName())) {
+            return;
+        }
+        if (seen == Const.ARETURN) {
+            String methodName = getMethodName();
+            if (methodName.startsWith("lambda$") || "initialValue".equals(methodName)) {
+                return;
+            }
+            creation.isReturned = true;
+        }
+
+        creations.add(creation);
+    }
+
+    /**
+     * holds the creation of a heavyweight object
+     */
+    static class Creation {
+        final int pc;
+        final String typeName;
+        final boolean isShared;
+        boolean isReturned;
+
+        Creation(int creationPC, String type, boolean shared) {
+            pc = creationPC;
+            typeName = type;
+            isShared = shared;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
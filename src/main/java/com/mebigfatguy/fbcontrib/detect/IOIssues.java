@@ -31,7 +31,9 @@ import org.apache.bcel.classfile.JavaClass;
 
 import com.mebigfatguy.fbcontrib.utils.BugType;
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
 import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
 import com.mebigfatguy.fbcontrib.utils.Values;
@@ -51,7 +53,7 @@ import edu.umd.cs.findbugs.ba.ClassContext;
 public class IOIssues extends BytecodeScanningDetector {
 
     enum IOIUserValue {
-        BUFFER, READER, ZLIB
+        BUFFER, READER, ZLIB, RAW_STREAM, UNBUFFERED_READER
     };
 
     private static final String ANY_PARMS = "(*)";
@@ -80,9 +82,53 @@ public class IOIssues extends BytecodeScanningDetector {
     // @formatter:on
     );
 
+    private static final Set<String> FILE_STREAM_CLASSES = UnmodifiableSet.create(
+            // @formatter:off
+            "java.io.FileInputStream", "java.io.FileOutputStream"
+    // @formatter:on
+    );
+
+    private static final Set<String> DATA_STREAM_CLASSES = UnmodifiableSet.create(
+            // @formatter:off
+            "java.io.DataInputStream", "java.io.DataOutputStream"
+    // @formatter:on
+    );
+
+    private static final Set<String> DECODING_READER_CLASSES = UnmodifiableSet.create(
+            // @formatter:off
+            "java.io.InputStreamReader", "java.io.FileReader"
+    // @formatter:on
+    );
+
+    private static final Set<FQMethod> RAW_STREAM_FACTORIES = UnmodifiableSet.create(
+            // @formatter:off
+            new FQMethod("java/net/Socket", "getInputStream", ANY_PARMS),
+            new FQMethod("java/net/Socket", "getOutputStream", ANY_PARMS),
+            new FQMethod("java/nio/file/Files", "newInputStream", ANY_PARMS),
+            new FQMethod("java/nio/file/Files", "newOutputStream", ANY_PARMS)
+    // @formatter:on
+    );
+
+    private static final Set<String> SINGLE_BYTE_METHODS = UnmodifiableSet.create(
+            // @formatter:off
+            "read" + SignatureBuilder.SIG_VOID_TO_INT, "write" + SignatureBuilder.SIG_INT_TO_VOID
+    // @formatter:on
+    );
+
+    private static final Set<String> PRIMITIVE_IO_METHODS = UnmodifiableSet.create(
+            // @formatter:off
+            "readBoolean", "readByte", "readUnsignedByte", "readChar", "readShort", "readUnsignedShort", "readInt",
+            "readLong", "readFloat", "readDouble", "writeBoolean", "writeByte", "writeChar", "writeShort",
+            "writeInt", "writeLong", "writeFloat", "writeDouble"
+    // @formatter:on
+    );
+
     private BugReporter bugReporter;
     private JavaClass readerClass;
     private Map<Integer, SourceLineAnnotation> unendedZLIBs;
+    private Map<Integer, BugType> unbufferedCalls;
+    private Map<Integer, IOIUserValue> unbufferedRegisters;
+    private LoopTracker loops;
     private OpcodeStack stack;
     private int clsVersion;
 
@@ -114,15 +160,22 @@ public class IOIssues extends BytecodeScanningDetector {
             stack = new OpcodeStack();
             clsVersion = clsContext.getJavaClass().getMajor();
             unendedZLIBs = new HashMap<>();
+            unbufferedCalls = new HashMap<>();
+            unbufferedRegisters = new HashMap<>();
+            loops = new LoopTracker();
             super.visitClassContext(clsContext);
         } finally {
             unendedZLIBs = null;
+            unbufferedCalls = null;
+            unbufferedRegisters = null;
+            loops = null;
             stack = null;
         }
     }
 
     /**
-     * implements the visitor to reset the opcode stack
+     * implements the visitor to reset the opcode stack, and report the single byte
+     * or character reads and writes on unbuffered streams that are done in loops
      *
      * @param obj the currently parsed code block
      */
@@ -131,12 +184,25 @@ public class IOIssues extends BytecodeScanningDetector {
 
         stack.resetForMethodEntry(this);
         unendedZLIBs.clear();
+        unbufferedCalls.clear();
+        unbufferedRegisters.clear();
+        loops.clear();
         super.visitCode(obj);
 
         for (SourceLineAnnotation sa : unendedZLIBs.values()) {
             bugReporter.reportBug(new BugInstance(this, BugType.IOI_UNENDED_ZLIB_OBJECT.name(), NORMAL_PRIORITY)
                     .addClass(this).addMethod(this).addSourceLine(sa));
         }
+
+        for (Map.Entry<Integer, BugType> entry : unbufferedCalls.entrySet()) {
+            int pc = entry.getKey().intValue();
+            if (loops.isInLoop(pc)) {
+                BugType bugType = entry.getValue();
+                bugReporter.reportBug(new BugInstance(this, bugType.name(),
+                        bugType == BugType.IOI_UNBUFFERED_SINGLE_BYTE_IO ? NORMAL_PRIORITY : LOW_PRIORITY)
+                                .addClass(this).addMethod(this).addSourceLine(this, pc));
+            }
+        }
     }
 
     /**
@@ -151,6 +217,11 @@ public class IOIssues extends BytecodeScanningDetector {
      * 
      * Also look for uses of Inflater and Deflater that don't call end()
      *
+     * Also track which streams are raw file, socket or random access file streams
+     * that aren't wrapped in a buffered stream, to find single byte reads and
+     * writes done on them in loops, and readers that decode a stream without a
+     * BufferedReader, to find character at a time reads done on them in loops.
+     *
      * @param seen the currently parsed opcode
      */
     @Override
@@ -164,11 +235,15 @@ public class IOIssues extends BytecodeScanningDetector {
                 break;
 
             case Const.INVOKESTATIC:
-                processInvokeStatic();
+                uvSawType = processInvokeStatic();
                 break;
 
             case Const.INVOKEVIRTUAL:
-                processInvokeVirtual();
+                uvSawType = processInvokeVirtual();
+                break;
+
+            case Const.INVOKEINTERFACE:
+                processSingleByteCall();
                 break;
 
             case Const.ASTORE:
@@ -180,6 +255,7 @@ public class IOIssues extends BytecodeScanningDetector {
                 break;
 
             default:
+                loops.sawOpcode(this, seen);
                 break;
             }
         } catch (ClassNotFoundException cnfe) {
@@ -203,22 +279,30 @@ public class IOIssues extends BytecodeScanningDetector {
                 return IOIUserValue.BUFFER;
             } else if (ZLIB_CLASSES.contains(clsName)) {
                 return IOIUserValue.ZLIB;
-            } else if ("java.io.FileInputStream".equals(clsName) || "java.io.FileOutputStream".equals(clsName)) {
-                if (clsVersion >= Const.MAJOR_1_7) {
-                    if (!getMethod().isStatic()) {
-                        String sig = getSigConstantOperand();
-                        int numParms = SignatureUtils.getNumParameters(sig);
-                        if (stack.getStackDepth() > numParms) {
-                            OpcodeStack.Item itm = stack.getStackItem(numParms);
-                            if (itm.getRegisterNumber() == 0) {
-                                return null;
-                            }
+            } else if (FILE_STREAM_CLASSES.contains(clsName) || "java.io.RandomAccessFile".equals(clsName)) {
+                if (!getMethod().isStatic()) {
+                    String sig = getSigConstantOperand();
+                    int numParms = SignatureUtils.getNumParameters(sig);
+                    if (stack.getStackDepth() > numParms) {
+                        OpcodeStack.Item itm = stack.getStackItem(numParms);
+                        if (itm.getRegisterNumber() == 0) {
+                            return null;
                         }
                     }
+                }
+                if ((clsVersion >= Const.MAJOR_1_7) && FILE_STREAM_CLASSES.contains(clsName)) {
                     bugReporter.reportBug(
                             new BugInstance(this, BugType.IOI_USE_OF_FILE_STREAM_CONSTRUCTORS.name(), NORMAL_PRIORITY)
                                     .addClass(this).addMethod(this).addSourceLine(this));
                 }
+                return IOIUserValue.RAW_STREAM;
+            } else if (DATA_STREAM_CLASSES.contains(clsName)) {
+                if ((stack.getStackDepth() > 0)
+                        && (getUnbufferedType(stack.getStackItem(0)) == IOIUserValue.RAW_STREAM)) {
+                    return IOIUserValue.RAW_STREAM;
+                }
+            } else if (DECODING_READER_CLASSES.contains(clsName)) {
+                return IOIUserValue.UNBUFFERED_READER;
             } else if (readerClass != null) {
                 JavaClass cls = Repository.lookupClass(clsName);
                 if (cls.instanceOf(readerClass)) {
@@ -230,10 +314,14 @@ public class IOIssues extends BytecodeScanningDetector {
         return null;
     }
 
-    private void processInvokeStatic() {
+    @Nullable
+    private IOIUserValue processInvokeStatic() {
         String clsName = getClassConstantOperand();
         String methodName = getNameConstantOperand();
         FQMethod m = new FQMethod(clsName, methodName, ANY_PARMS);
+        if (RAW_STREAM_FACTORIES.contains(m)) {
+            return IOIUserValue.RAW_STREAM;
+        }
         if (COPY_METHODS.contains(m)) {
             String signature = getSigConstantOperand();
             int numArguments = SignatureUtils.getNumParameters(signature);
@@ -250,6 +338,7 @@ public class IOIssues extends BytecodeScanningDetector {
                             break;
 
                         case READER:
+                        case UNBUFFERED_READER:
                             bugReporter.reportBug(
                                     new BugInstance(this, BugType.IOI_COPY_WITH_READER.name(), NORMAL_PRIORITY)
                                             .addClass(this).addMethod(this).addSourceLine(this));
@@ -262,10 +351,18 @@ public class IOIssues extends BytecodeScanningDetector {
                 }
             }
         }
+        return null;
     }
 
-    private void processInvokeVirtual() {
+    @Nullable
+    private IOIUserValue processInvokeVirtual() {
         String methodName = getNameConstantOperand();
+        if (RAW_STREAM_FACTORIES.contains(new FQMethod(getClassConstantOperand(), methodName, ANY_PARMS))) {
+            return IOIUserValue.RAW_STREAM;
+        }
+
+        processSingleByteCall();
+
         if ("end".equals(methodName)) {
             String clsName = getDottedClassConstantOperand();
             if (ZLIB_CLASSES.contains(clsName)) {
@@ -278,14 +375,72 @@ public class IOIssues extends BytecodeScanningDetector {
                 }
             }
         }
+        return null;
+    }
+
+    /**
+     * records reads and writes of a single byte, or primitive, on a raw stream,
+     * and reads of a single character on a reader that decodes a stream without a
+     * BufferedReader, so they can be reported if they are done in a loop
+     */
+    private void processSingleByteCall() {
+        String methodName = getNameConstantOperand();
+        String sig = getSigConstantOperand();
+        int numParms = SignatureUtils.getNumParameters(sig);
+        if (stack.getStackDepth() <= numParms) {
+            return;
+        }
+
+        IOIUserValue uv = getUnbufferedType(stack.getStackItem(numParms));
+        if (uv == IOIUserValue.RAW_STREAM) {
+            if (SINGLE_BYTE_METHODS.contains(methodName + sig) || PRIMITIVE_IO_METHODS.contains(methodName)) {
+                unbufferedCalls.put(Integer.valueOf(getPC()), BugType.IOI_UNBUFFERED_SINGLE_BYTE_IO);
+            }
+        } else if ((uv == IOIUserValue.UNBUFFERED_READER) && "read".equals(methodName)
+                && SignatureBuilder.SIG_VOID_TO_INT.equals(sig)) {
+            unbufferedCalls.put(Integer.valueOf(getPC()), BugType.IOI_UNBUFFERED_READER_LOOP);
+        }
+    }
+
+    /**
+     * returns whether a stack item is a raw stream, or a reader decoding a stream
+     * without a BufferedReader. The stack's user value doesn't survive the merges
+     * at branch targets, such as the head of a loop, so streams that were stored
+     * in a register are also found by that register.
+     *
+     * @param itm the stack item to check
+     * @return RAW_STREAM or UNBUFFERED_READER, or null if the item is neither
+     */
+    @Nullable
+    private IOIUserValue getUnbufferedType(OpcodeStack.Item itm) {
+        Object uv = itm.getUserValue();
+        if ((uv == IOIUserValue.RAW_STREAM) || (uv == IOIUserValue.UNBUFFERED_READER)) {
+            return (IOIUserValue) uv;
+        }
+        if (uv != null) {
+            return null;
+        }
+
+        int reg = itm.getRegisterNumber();
+        if (reg >= 0) {
+            return unbufferedRegisters.get(Integer.valueOf(reg));
+        }
+        return null;
     }
 
     private void processAStore(int seen) {
         if (stack.getStackDepth() > 0) {
             OpcodeStack.Item itm = stack.getStackItem(0);
+            Integer reg = Integer.valueOf(RegisterUtils.getAStoreReg(this, seen));
             if ((IOIUserValue) itm.getUserValue() == IOIUserValue.ZLIB) {
-                unendedZLIBs.put(Integer.valueOf(RegisterUtils.getAStoreReg(this, seen)),
-                        SourceLineAnnotation.fromVisitedInstruction(this, getPC()));
+                unendedZLIBs.put(reg, SourceLineAnnotation.fromVisitedInstruction(this, getPC()));
+            }
+
+            IOIUserValue unbufferedType = getUnbufferedType(itm);
+            if (unbufferedType != null) {
+                unbufferedRegisters.put(reg, unbufferedType);
+            } else {
+                unbufferedRegisters.remove(reg);
             }
         }
     }
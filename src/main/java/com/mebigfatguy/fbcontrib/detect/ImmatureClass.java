@@ -18,7 +18,9 @@ import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
 
 import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BoundedBugReporter;
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.GeneratedCodeUtils;
 import com.mebigfatguy.fbcontrib.utils.SerialVersionCalc;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
@@ -61,12 +63,12 @@ public class ImmatureClass extends BytecodeScanningDetector {
         NONE, SAW_INSTANCE, REPORTED
     }
 
-    private BugReporter bugReporter;
+    private BoundedBugReporter bugReporter;
     private FieldStatus fieldStatus = FieldStatus.NONE;
     private boolean classIsJPAEntity;
 
     public ImmatureClass(BugReporter reporter) {
-        bugReporter = reporter;
+        bugReporter = new BoundedBugReporter(reporter);
     }
 
     /**
@@ -76,6 +78,10 @@ public class ImmatureClass extends BytecodeScanningDetector {
      */
     @Override
     public void visitClassContext(ClassContext classContext) {
+        if (GeneratedCodeUtils.shouldSkip(this, classContext.getJavaClass())) {
+            return;
+        }
+
         JavaClass cls = classContext.getJavaClass();
         fieldStatus = FieldStatus.NONE;
 
@@ -434,4 +440,13 @@ public class ImmatureClass extends BytecodeScanningDetector {
         return true;
     }
 
+    /**
+     * implements the detector to note how many generated classes were skipped, and
+     * how many findings were suppressed by the reporting limits
+     */
+    @Override
+    public void report() {
+        GeneratedCodeUtils.reportSkippedClasses();
+        bugReporter.reportSuppressedBugs();
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for lists that are searched linearly, with contains, indexOf,
+ * lastIndexOf, remove(Object) or a stream's anyMatch, inside of a loop, where
+ * the list is the same on each iteration. Each search walks the list, so the
+ * loop as a whole is quadratic. Building a HashSet or HashMap from the list once,
+ * before the loop, makes each lookup constant time.
+ */
+@CustomUserValue
+public class LinearSearchInLoop extends AbstractCollectionScanningDetector {
+
+    private static final String SIG_OBJECT_TO_INT = new SignatureBuilder()
+            .withParamTypes(Values.SLASHED_JAVA_LANG_OBJECT).withReturnType(Values.SIG_PRIMITIVE_INT).toString();
+
+    private static final Set<String> SEARCH_METHODS = UnmodifiableSet.create(
+            "contains" + SignatureBuilder.SIG_OBJECT_TO_BOOLEAN, "remove" + SignatureBuilder.SIG_OBJECT_TO_BOOLEAN,
+            "indexOf" + SIG_OBJECT_TO_INT, "lastIndexOf" + SIG_OBJECT_TO_INT);
+
+    private static final Set<String> STREAM_SEARCH_METHODS = UnmodifiableSet.create("anyMatch", "noneMatch",
+            "allMatch");
+
+    private static final String STREAM_CLASS = "java/util/stream/Stream";
+    private static final String SIG_VOID_TO_STREAM = new SignatureBuilder().withReturnType(STREAM_CLASS).toString();
+
+    private LoopTracker loops;
+    private List<SearchSite> searchSites;
+
+    /**
+     * constructs a LSIL detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public LinearSearchInLoop(BugReporter bugReporter) {
+        super(bugReporter, Values.SLASHED_JAVA_UTIL_LIST);
+    }
+
+    /**
+     * implements the visitor to reset the collections, and report the searches in
+     * loops of lists that don't change in the loop
+     *
+     * @param obj the context object of the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        try {
+            loops = new LoopTracker();
+            searchSites = new ArrayList<>();
+            super.visitCode(obj);
+
+            for (SearchSite site : searchSites) {
+                int depth = 0;
+                boolean invariant = true;
+                for (LoopTracker.Loop loop : loops.getLoops()) {
+                    if (loop.isInLoop(site.pc)) {
+                        depth++;
+                        invariant &= isInvariant(site, loop);
+                    }
+                }
+
+                if ((depth > 0) && invariant) {
+                    int priority = (depth > 1) ? HIGH_PRIORITY : site.priority;
+                    bugReporter.reportBug(new BugInstance(this, BugType.LSIL_LINEAR_SEARCH_IN_LOOP.name(), priority)
+                            .addClass(this).addMethod(this).addSourceLine(this, site.pc)
+                            .addString(site.listName + '.' + site.methodName + ", nested " + depth + " loop(s) deep"));
+                }
+            }
+        } finally {
+            loops = null;
+            searchSites = null;
+        }
+    }
+
+    /**
+     * implements the visitor to collect loops, register stores, and linear searches
+     * of lists
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        Comparable<?> streamSource = null;
+        try {
+            stack.precomputation(this);
+
+            if ((seen == Const.INVOKEINTERFACE) || (seen == Const.INVOKEVIRTUAL)) {
+                String methodName = getNameConstantOperand();
+                String signature = getSigConstantOperand();
+                if (SEARCH_METHODS.contains(methodName + signature)) {
+                    if (stack.getStackDepth() > 1) {
+                        addSearchSite(stack.getStackItem(1), methodName, NORMAL_PRIORITY);
+                    }
+                } else if ("stream".equals(methodName) && SIG_VOID_TO_STREAM.equals(signature)) {
+                    if (stack.getStackDepth() > 0) {
+                        streamSource = getListSource(stack.getStackItem(0));
+                    }
+                } else if (STREAM_CLASS.equals(getClassConstantOperand())
+                        && STREAM_SEARCH_METHODS.contains(methodName)) {
+                    if (stack.getStackDepth() > 1) {
+                        // the predicate may not be an equality test that a set could answer
+                        addSearchSite(stack.getStackItem(1), "stream()." + methodName, LOW_PRIORITY);
+                    }
+                }
+            } else {
+                loops.sawOpcode(this, seen);
+            }
+        } catch (ClassNotFoundException cnfe) {
+            bugReporter.reportMissingClass(cnfe);
+        } finally {
+            stack.sawOpcode(this, seen);
+            if ((streamSource != null) && (stack.getStackDepth() > 0)) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                itm.setUserValue(streamSource);
+            }
+        }
+    }
+
+    /**
+     * records a linear search of a list, held in a local variable or field
+     *
+     * @param listItem   the list, or stream of the list, being searched
+     * @param methodName the search method
+     * @param priority   the priority to report the search at
+     * @throws ClassNotFoundException if the list's class can't be found
+     */
+    private void addSearchSite(OpcodeStack.Item listItem, String methodName, int priority)
+            throws ClassNotFoundException {
+        Comparable<?> source = getListSource(listItem);
+        if (source instanceof Integer) {
+            int reg = ((Integer) source).intValue();
+            searchSites.add(new SearchSite(getPC(), reg,
+                    RegisterUtils.getLocalVariableName(getMethod().getLocalVariableTable(), reg, getPC()), methodName,
+                    priority));
+        } else if (source instanceof String) {
+            XField field = listItem.getXField();
+            // constant lookup lists are usually short
+            boolean isConstant = (field != null) && field.isStatic() && field.isFinal();
+            searchSites.add(
+                    new SearchSite(getPC(), -1, (String) source, methodName, isConstant ? LOW_PRIORITY : priority));
+        }
+    }
+
+    /**
+     * returns the local variable register, or field name, of a list, or of the list
+     * a stream was created from
+     *
+     * @param item the stack item holding the list or stream
+     * @return the register as an Integer, the field name, or null if not a list
+     * @throws ClassNotFoundException if the item's class can't be found
+     */
+    @Nullable
+    private Comparable<?> getListSource(OpcodeStack.Item item) throws ClassNotFoundException {
+        int reg = isLocalCollection(item);
+        if (reg >= 0) {
+            return Integer.valueOf(reg);
+        }
+
+        Comparable<?> alias = (Comparable<?>) item.getUserValue();
+        if (alias instanceof String) {
+            return alias;
+        }
+
+        XField field = item.getXField();
+        if (field != null) {
+            JavaClass cls = item.getJavaClass();
+            if ((cls != null) && cls.implementationOf(collectionClass)) {
+                return field.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * determines whether the register holding the list isn't stored to inside a
+     * loop, and so is the same list on every iteration
+     *
+     * @param site the list search
+     * @param loop the loop the search is in
+     * @return if the list is loop invariant
+     */
+    private boolean isInvariant(SearchSite site, LoopTracker.Loop loop) {
+        return (site.listReg < 0) || !loops.isStoredInLoop(site.listReg, loop);
+    }
+
+    /**
+     * holds a linear search of a list, and the list that is searched
+     */
+    static class SearchSite {
+        final int pc;
+        final int listReg;
+        final String listName;
+        final String methodName;
+        final int priority;
+
+        SearchSite(int sitePC, int reg, String name, String method, int sitePriority) {
+            pc = sitePC;
+            listReg = reg;
+            listName = name;
+            methodName = method;
+            priority = sitePriority;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
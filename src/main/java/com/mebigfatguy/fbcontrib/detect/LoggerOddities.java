@@ -37,7 +37,12 @@ import org.apache.bcel.classfile.Field;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 
+import com.mebigfatguy.fbcontrib.collect.MethodInfo;
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BoundedBugReporter;
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.GeneratedCodeUtils;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
@@ -60,18 +65,28 @@ import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
  * looks for uses of log4j or slf4j where the class specified when creating the
  * logger is not the same as the class in which this logger is used. Also looks
  * for using concatenation with slf4j logging rather than using the
- * parameterized interface.
+ * parameterized interface, and for trace and debug statements whose arguments
+ * are expensive to build, and are built even when the level is disabled.
  */
 @CustomUserValue
 public class LoggerOddities extends BytecodeScanningDetector {
 
     private static final Set<String> LOGGER_METHODS = UnmodifiableSet.create("trace", "debug", "info", "warn", "error",
             "fatal");
+    private static final Set<String> FINE_LOGGER_METHODS = UnmodifiableSet.create("trace", "debug");
+    private static final Set<String> LEVEL_CHECK_METHODS = UnmodifiableSet.create("isTraceEnabled", "isDebugEnabled");
+    private static final Set<String> COSTLY_ARGUMENT_METHODS = UnmodifiableSet.create("java.lang.String#format",
+            "java.lang.String#join", "java.util.Arrays#toString", "java.util.Arrays#deepToString",
+            "com.fasterxml.jackson.databind.ObjectMapper#writeValueAsString",
+            "com.fasterxml.jackson.databind.ObjectWriter#writeValueAsString", "com.google.gson.Gson#toJson");
+    private static final int TRIVIAL_METHOD_SIZE = 32;
     private static final String COMMONS_LOGGER = "org/apache/commons/logging/Log";
     private static final String LOG4J_LOGGER = "org/apache/log4j/Logger";
     private static final String LOG4J2_LOGGER = "org/apache/logging/log4j/Logger";
     private static final String LOG4J2_LOGMANAGER = "org/apache/logging/log4j/LogManager";
     private static final String SLF4J_LOGGER = "org/slf4j/Logger";
+    private static final Set<String> LOGGER_CLASSES = UnmodifiableSet.create(SLF4J_LOGGER, LOG4J_LOGGER,
+            LOG4J2_LOGGER, COMMONS_LOGGER);
     private static final String SIG_STRING_AND_TWO_OBJECTS_TO_VOID = new SignatureBuilder()
             .withParamTypes(Values.SLASHED_JAVA_LANG_STRING, Values.SLASHED_JAVA_LANG_OBJECT,
                     Values.SLASHED_JAVA_LANG_OBJECT)
@@ -108,12 +123,15 @@ public class LoggerOddities extends BytecodeScanningDetector {
     private static final Pattern FORMATTER_ANCHOR = Pattern.compile("\\{\\}");
     private static final Pattern NON_SIMPLE_FORMAT = Pattern.compile(".*\\%[^sdf].*", Pattern.CASE_INSENSITIVE);
 
-    private final BugReporter bugReporter;
+    private final BoundedBugReporter bugReporter;
     private Set<String> formatterLoggers;
     private JavaClass throwableClass;
     private OpcodeStack stack;
     private String nameOfThisClass;
     private boolean isStaticInitializer;
+    private boolean sawLevelCheck;
+    private int guardedUntilPC;
+    private String costlyVarArg;
 
     /**
      * constructs a LO detector given the reporter to report bugs on.
@@ -121,7 +139,7 @@ public class LoggerOddities extends BytecodeScanningDetector {
      * @param bugReporter the sync of bug reports
      */
     public LoggerOddities(final BugReporter bugReporter) {
-        this.bugReporter = bugReporter;
+        this.bugReporter = new BoundedBugReporter(bugReporter);
 
         try {
             throwableClass = Repository.lookupClass(Values.SLASHED_JAVA_LANG_THROWABLE);
@@ -139,6 +157,10 @@ public class LoggerOddities extends BytecodeScanningDetector {
      */
     @Override
     public void visitClassContext(ClassContext classContext) {
+        if (GeneratedCodeUtils.shouldSkip(this, classContext.getJavaClass())) {
+            return;
+        }
+
         try {
             stack = new OpcodeStack();
             nameOfThisClass = SignatureUtils.getNonAnonymousPortion(classContext.getJavaClass().getClassName());
@@ -173,6 +195,9 @@ public class LoggerOddities extends BytecodeScanningDetector {
         }
 
         isStaticInitializer = Values.STATIC_INITIALIZER.equals(m.getName());
+        sawLevelCheck = false;
+        guardedUntilPC = -1;
+        costlyVarArg = null;
         super.visitCode(obj);
     }
 
@@ -197,6 +222,11 @@ public class LoggerOddities extends BytecodeScanningDetector {
         try {
             stack.precomputation(this);
 
+            if (sawLevelCheck) {
+                sawLevelCheck = false;
+                processLevelCheckResult(seen);
+            }
+
             if ((seen == Const.LDC) || (seen == Const.LDC_W)) {
                 Constant c = getConstantRefOperand();
                 if (c instanceof ConstantClass) {
@@ -242,7 +272,13 @@ public class LoggerOddities extends BytecodeScanningDetector {
                         exMessageReg = exItem.getRegisterNumber();
                     }
                 } else if (LOGGER_METHODS.contains(mthName)) {
+                    if (FINE_LOGGER_METHODS.contains(mthName)) {
+                        checkForEagerLogArguments();
+                    }
                     checkForProblemsWithLoggerMethods();
+                } else if (LEVEL_CHECK_METHODS.contains(mthName)
+                        && LOGGER_CLASSES.contains(getClassConstantOperand())) {
+                    sawLevelCheck = true;
                 } else if (Values.TOSTRING.equals(mthName)
                         && SignatureBuilder.SIG_VOID_TO_STRING.equals(getSigConstantOperand())) {
                     callingClsName = getClassConstantOperand();
@@ -271,6 +307,9 @@ public class LoggerOddities extends BytecodeScanningDetector {
             } else if (seen == Const.AASTORE) {
                 if (stack.getStackDepth() >= 3) {
                     OpcodeStack.Item arrayItem = stack.getStackItem(2);
+                    if (costlyVarArg == null) {
+                        costlyVarArg = getCostlyArgument(stack.getStackItem(0));
+                    }
                     LOUserValue<Integer> uv = (LOUserValue<Integer>) arrayItem.getUserValue();
                     if ((uv != null) && (uv.getType() == LOUserValue.LOType.ARRAY_SIZE)) {
                         Integer size = uv.getValue();
@@ -311,6 +350,10 @@ public class LoggerOddities extends BytecodeScanningDetector {
                     }
                 }
             }
+            if (OpcodeUtils.isStandardInvoke(seen)
+                    && getSigConstantOperand().contains(SignatureBuilder.SIG_OBJECT_ARRAY)) {
+                costlyVarArg = null;
+            }
         } catch (ClassNotFoundException cnfe) {
             bugReporter.reportMissingClass(cnfe);
         } finally {
@@ -535,6 +578,93 @@ public class LoggerOddities extends BytecodeScanningDetector {
         }
     }
 
+    /**
+     * notes the code that is only run when trace or debug logging is enabled,
+     * after a call to isTraceEnabled or isDebugEnabled on one of the known logger
+     * apis. When the result is stored, or negated to return early, the rest of the
+     * method is treated as guarded.
+     *
+     * @param seen the opcode following the level check
+     */
+    private void processLevelCheckResult(int seen) {
+        if (seen == Const.IFEQ) {
+            guardedUntilPC = Math.max(guardedUntilPC, getBranchTarget());
+        } else {
+            guardedUntilPC = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * looks for trace and debug statements on the known logger apis, not guarded
+     * by a level check, whose arguments are built by expensive calls, as that work
+     * is done even when the level is disabled
+     */
+    private void checkForEagerLogArguments() {
+        String callingClsName = getClassConstantOperand();
+        if (!LOGGER_CLASSES.contains(callingClsName) || (getPC() < guardedUntilPC)) {
+            return;
+        }
+
+        List<String> parmSigs = SignatureUtils.getParameterSignatures(getSigConstantOperand());
+        int numParms = parmSigs.size();
+        if (stack.getStackDepth() < numParms) {
+            return;
+        }
+
+        String costlyArg = null;
+        for (int i = 0; (i < numParms) && (costlyArg == null); i++) {
+            if (SignatureBuilder.SIG_OBJECT_ARRAY.equals(parmSigs.get(numParms - i - 1))) {
+                costlyArg = costlyVarArg;
+            } else {
+                costlyArg = getCostlyArgument(stack.getStackItem(i));
+            }
+        }
+
+        if (costlyArg != null) {
+            bugReporter.reportBug(new BugInstance(this, BugType.LO_EAGER_LOG_ARGUMENT_EVALUATION.name(), NORMAL_PRIORITY)
+                    .addClass(this).addMethod(this).addSourceLine(this).addString(costlyArg));
+        }
+    }
+
+    /**
+     * returns the method that built a log argument, if it was built right in the
+     * log statement, and the method does expensive work. Values that were already
+     * held in local variables are ignored, as is the boxing of primitives.
+     *
+     * @param itm the argument to the log statement
+     * @return the dotted name of the expensive method, or null if not expensive
+     */
+    @Nullable
+    private String getCostlyArgument(OpcodeStack.Item itm) {
+        if (itm.getRegisterNumber() >= 0) {
+            return null;
+        }
+
+        XMethod xm = itm.getReturnValueOf();
+        if (xm == null) {
+            return null;
+        }
+
+        String clsName = xm.getClassName();
+        String methodName = xm.getName();
+        String description = clsName + '.' + methodName;
+        if (COSTLY_ARGUMENT_METHODS.contains(clsName + '#' + methodName)) {
+            return description;
+        }
+
+        String slashedClsName = clsName.replace('.', '/');
+        if (clsName.startsWith(Values.JAVA)) {
+            return (CostUtils.getCallCost(slashedClsName, methodName) != CostUtils.COST_NONE) ? description : null;
+        }
+
+        Statistics statistics = Statistics.getStatistics();
+        if (statistics.getMethodCost(slashedClsName, methodName, xm.getSignature()) != CostUtils.COST_NONE) {
+            return description;
+        }
+        MethodInfo mi = statistics.getMethodStatistics(slashedClsName, methodName, xm.getSignature());
+        return (mi.getNumBytes() > TRIVIAL_METHOD_SIZE) ? description : null;
+    }
+
     /**
      * looks for slf4j calls where an exception is passed as a logger parameter,
      * expecting to be substituted for a {} marker. As slf4j just passes the
@@ -737,6 +867,16 @@ public class LoggerOddities extends BytecodeScanningDetector {
         }
     }
 
+    /**
+     * implements the detector to note how many generated classes were skipped, and
+     * how many findings were suppressed by the reporting limits
+     */
+    @Override
+    public void report() {
+        GeneratedCodeUtils.reportSkippedClasses();
+        bugReporter.reportSuppressedBugs();
+    }
+
     static class LOUserValue<T> {
         enum LOType {
             CLASS_NAME, METHOD_NAME, MESSAGE_REG, ARRAY_SIZE, SIMPLE_FORMAT, TOSTRING, FORMATTER_LOGGER, NULL
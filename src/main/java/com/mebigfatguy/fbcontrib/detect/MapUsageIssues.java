@@ -18,8 +18,10 @@
  */
 package com.mebigfatguy.fbcontrib.detect;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -32,9 +34,11 @@ import org.apache.bcel.classfile.JavaClass;
 import com.mebigfatguy.fbcontrib.utils.BugType;
 import com.mebigfatguy.fbcontrib.utils.CodeByteUtils;
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.QMethod;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.ToString;
 import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
 import com.mebigfatguy.fbcontrib.utils.Values;
@@ -63,6 +67,18 @@ public class MapUsageIssues extends BytecodeScanningDetector {
     private static final FQMethod REMOVE_METHOD = new FQMethod("java/util/Map", "remove",
             SignatureBuilder.SIG_OBJECT_TO_OBJECT);
 
+    private static final Set<String> LOOKUP_METHODS = UnmodifiableSet.create(
+            "get" + SignatureBuilder.SIG_OBJECT_TO_OBJECT, "containsKey" + SignatureBuilder.SIG_OBJECT_TO_BOOLEAN,
+            "getOrDefault" + SignatureBuilder.SIG_TWO_OBJECTS_TO_OBJECT);
+    private static final String PUT_METHOD = "put" + SignatureBuilder.SIG_TWO_OBJECTS_TO_OBJECT;
+
+    private static final Set<String> MAP_CLASSES = UnmodifiableSet.create("java/util/Map", "java/util/HashMap",
+            "java/util/LinkedHashMap", "java/util/TreeMap", "java/util/concurrent/ConcurrentMap",
+            "java/util/concurrent/ConcurrentHashMap", "java/util/concurrent/ConcurrentSkipListMap");
+    private static final Set<String> CONCURRENT_MAP_CLASSES = UnmodifiableSet.create(
+            "java/util/concurrent/ConcurrentMap", "java/util/concurrent/ConcurrentHashMap",
+            "java/util/concurrent/ConcurrentSkipListMap");
+
     private static final QMethod SIZE_METHOD = new QMethod("size", SignatureBuilder.SIG_VOID_TO_INT);
 
     private static final Set<String> COLLECTION_ACCESSORS = UnmodifiableSet.create("keySet", "entrySet", "values");
@@ -81,6 +97,9 @@ public class MapUsageIssues extends BytecodeScanningDetector {
     private OpcodeStack stack;
     private Map<MapRef, ContainsKey> mapContainsKeyUsed;
     private Map<MapRef, Get> mapGetUsed;
+    private Map<MapRef, Lookup> mapLookupUsed;
+    private List<LookupPut> lookupPuts;
+    private LoopTracker loops;
 
     /**
      * constructs a MUI detector given the reporter to report bugs on
@@ -97,10 +116,16 @@ public class MapUsageIssues extends BytecodeScanningDetector {
             stack = new OpcodeStack();
             mapContainsKeyUsed = new HashMap<>();
             mapGetUsed = new HashMap<>();
+            mapLookupUsed = new HashMap<>();
+            lookupPuts = new ArrayList<>();
+            loops = new LoopTracker();
             super.visitClassContext(classContext);
         } finally {
             mapContainsKeyUsed = null;
             mapGetUsed = null;
+            mapLookupUsed = null;
+            lookupPuts = null;
+            loops = null;
             stack = null;
         }
     }
@@ -110,7 +135,21 @@ public class MapUsageIssues extends BytecodeScanningDetector {
         stack.resetForMethodEntry(this);
         mapContainsKeyUsed.clear();
         mapGetUsed.clear();
+        mapLookupUsed.clear();
+        lookupPuts.clear();
+        loops.clear();
         super.visitCode(obj);
+
+        for (LookupPut lookupPut : lookupPuts) {
+            int priority;
+            if (lookupPut.isConcurrent) {
+                priority = HIGH_PRIORITY;
+            } else {
+                priority = loops.isInLoop(lookupPut.pc) ? NORMAL_PRIORITY : LOW_PRIORITY;
+            }
+            bugReporter.reportBug(new BugInstance(this, BugType.MUI_LOOKUP_BEFORE_PUT.name(), priority).addClass(this)
+                    .addMethod(this).addSourceLine(this, lookupPut.pc).addString(lookupPut.lookupMethod));
+        }
     }
 
     @Override
@@ -136,6 +175,16 @@ public class MapUsageIssues extends BytecodeScanningDetector {
                 }
             }
 
+            if (loops.sawOpcode(this, seen)) {
+                mapLookupUsed.clear();
+            } else if (!mapLookupUsed.isEmpty()) {
+                clearStaleLookups(seen);
+            }
+
+            if ((seen == Const.INVOKEINTERFACE) || (seen == Const.INVOKEVIRTUAL)) {
+                processLookupOrPut();
+            }
+
             if ((seen == Const.IFNULL) || (seen == Const.IFNONNULL)) {
                 if (stack.getStackDepth() > 0) {
                     OpcodeStack.Item itm = stack.getStackItem(0);
@@ -223,6 +272,72 @@ public class MapUsageIssues extends BytecodeScanningDetector {
         }
     }
 
+    /**
+     * forgets lookups once the map or key register is overwritten, as a following
+     * put would then be for a different map or key
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    private void clearStaleLookups(int seen) {
+        if (OpcodeUtils.isStore(seen) || (seen == Const.IINC)) {
+            int reg = getRegisterOperand();
+            Iterator<Map.Entry<MapRef, Lookup>> it = mapLookupUsed.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<MapRef, Lookup> entry = it.next();
+                if ((entry.getKey().register == reg) || entry.getValue().usesRegister(reg)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * looks for a get, containsKey or getOrDefault of a key, followed by a put of
+     * the same key into the same map, which hashes and searches for the key twice,
+     * when a merge, compute, or computeIfAbsent would do it once. On concurrent
+     * maps, the two calls also aren't atomic, so an update can be lost. These are
+     * reported once the method's loops are known.
+     */
+    private void processLookupOrPut() {
+        String clsName = getClassConstantOperand();
+        if (!MAP_CLASSES.contains(clsName)) {
+            return;
+        }
+
+        String methodCall = getNameConstantOperand() + getSigConstantOperand();
+        boolean isPut = PUT_METHOD.equals(methodCall);
+        if (!isPut && !LOOKUP_METHODS.contains(methodCall)) {
+            return;
+        }
+
+        int numArgs = isPut || "getOrDefault".equals(getNameConstantOperand()) ? 2 : 1;
+        if (stack.getStackDepth() <= numArgs) {
+            return;
+        }
+
+        OpcodeStack.Item mapItem = stack.getStackItem(numArgs);
+        MapRef mapRef = new MapRef(mapItem);
+        if (!mapRef.isValid()) {
+            return;
+        }
+
+        Lookup key = new Lookup(stack.getStackItem(numArgs - 1), getNameConstantOperand());
+        if (!isPut) {
+            if (key.isValid()) {
+                mapLookupUsed.put(mapRef, key);
+            }
+            return;
+        }
+
+        Lookup lookup = mapLookupUsed.remove(mapRef);
+        if ((lookup != null) && lookup.equals(key)) {
+            String mapSig = mapItem.getSignature();
+            boolean isConcurrent = CONCURRENT_MAP_CLASSES.contains(clsName) || (mapSig.startsWith("L")
+                    && CONCURRENT_MAP_CLASSES.contains(SignatureUtils.trimSignature(mapSig)));
+            lookupPuts.add(new LookupPut(getPC(), lookup.methodName, isConcurrent));
+        }
+    }
+
     @SuppressWarnings("CPD-START")
     static class ContainsKey {
         private Object keyValue;
@@ -351,6 +466,90 @@ public class MapUsageIssues extends BytecodeScanningDetector {
         }
     }
 
+    /**
+     * holds the key of a map lookup, which is either a local variable, or a field
+     * or constant. The register is kept apart from the field or constant, so that a
+     * key held in a register never matches an Integer constant key.
+     */
+    static class Lookup {
+        private Object keyValue;
+        private int keyRegister;
+        private String methodName;
+
+        public Lookup(OpcodeStack.Item itm, String method) {
+            methodName = method;
+            keyRegister = itm.getRegisterNumber();
+            if (keyRegister < 0) {
+                XField xf = itm.getXField();
+                if (xf != null) {
+                    keyValue = xf;
+                } else {
+                    keyValue = itm.getConstant();
+                }
+            }
+        }
+
+        public boolean isValid() {
+            return (keyRegister >= 0) || (keyValue != null);
+        }
+
+        public boolean usesRegister(int reg) {
+            return keyRegister == reg;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Lookup)) {
+                return false;
+            }
+
+            Lookup that = (Lookup) o;
+
+            if ((keyRegister >= 0) || (that.keyRegister >= 0)) {
+                return keyRegister == that.keyRegister;
+            }
+
+            if ((keyValue == null) || (that.keyValue == null)) {
+                return false;
+            }
+
+            return keyValue.equals(that.keyValue);
+        }
+
+        @Override
+        public int hashCode() {
+            if (keyRegister >= 0) {
+                return keyRegister;
+            }
+            return keyValue == null ? 0 : keyValue.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+
+    /**
+     * holds a put of a key, that was just looked up in the same map
+     */
+    static class LookupPut {
+        final int pc;
+        final String lookupMethod;
+        final boolean isConcurrent;
+
+        LookupPut(int putPC, String method, boolean concurrent) {
+            pc = putPC;
+            lookupMethod = method;
+            isConcurrent = concurrent;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+
     static class MapRef {
         private int register;
         private XField field;
@@ -44,6 +44,7 @@ import org.apache.bcel.classfile.Method;
 
 import com.mebigfatguy.fbcontrib.collect.MethodInfo;
 import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BoundedBugReporter;
 import com.mebigfatguy.fbcontrib.utils.BugType;
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
@@ -72,7 +73,7 @@ public class OverlyPermissiveMethod extends BytecodeScanningDetector {
         DECLARED_ACCESS.put(Integer.valueOf(0), "package private");
     }
 
-    private BugReporter bugReporter;
+    private BoundedBugReporter bugReporter;
     private OpcodeStack stack;
     private JavaClass cls;
     private String callingPackage;
@@ -84,7 +85,7 @@ public class OverlyPermissiveMethod extends BytecodeScanningDetector {
      * @param bugReporter the sync of bug reports
      */
     public OverlyPermissiveMethod(BugReporter bugReporter) {
-        this.bugReporter = bugReporter;
+        this.bugReporter = new BoundedBugReporter(bugReporter);
     }
 
     @Override
@@ -313,6 +314,8 @@ public class OverlyPermissiveMethod extends BytecodeScanningDetector {
                 }
             }
         }
+
+        bugReporter.reportSuppressedBugs();
     }
 
     private static boolean isOverlyPermissive(int declaredAccess) {
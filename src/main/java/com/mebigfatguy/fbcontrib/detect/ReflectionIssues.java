@@ -18,24 +18,62 @@
  */
 package com.mebigfatguy.fbcontrib.detect;
 
-import org.apache.bcel.Const;
 import java.lang.reflect.AccessibleObject;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
 
+import org.apache.bcel.Const;
 import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
 
 import com.mebigfatguy.fbcontrib.utils.BugType;
 import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.QMethod;
+import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureBuilder;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+import com.mebigfatguy.fbcontrib.utils.Values;
 
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
 import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XField;
 
+/**
+ * looks for issues around the use of reflection, including
+ * <ul>
+ * <li>calls to setAccessible, which get around the access protections of
+ * classes</li>
+ * <li>reflective lookups of classes, methods, fields and constructors, by names
+ * that are constants or fields, that are done on every call, or in loops,
+ * rather than once and cached</li>
+ * </ul>
+ */
+@CustomUserValue
 public class ReflectionIssues extends BytecodeScanningDetector {
 
+    private static final String CLASS_CLASS = "java/lang/Class";
+    private static final String REFLECT_PACKAGE_PREFIX = "java/lang/reflect/";
+
+    private static final Set<String> LOOKUP_METHODS = UnmodifiableSet.create("getMethod", "getDeclaredMethod",
+            "getField", "getDeclaredField", "getConstructor", "getDeclaredConstructor");
+
+    private static final Set<String> REFLECTIVE_USE_METHODS = UnmodifiableSet.create(
+            "java/lang/reflect/Method#invoke", "java/lang/reflect/Constructor#newInstance",
+            "java/lang/Class#newInstance", "java/lang/reflect/Field#get", "java/lang/reflect/Field#set");
+
     private static final QMethod SETACCESSIBLE = new QMethod("setAccessible", SignatureBuilder.SIG_BOOLEAN_TO_VOID);
     private static final FQMethod SETACCESSIBLE_ARRAY = new FQMethod("java/lang/reflect/AccessibleObject",
             "setAccessible", new SignatureBuilder().withParamTypes(AccessibleObject[].class, boolean.class).build());
@@ -52,6 +90,10 @@ public class ReflectionIssues extends BytecodeScanningDetector {
 
     }
     private BugReporter bugReporter;
+    private OpcodeStack stack;
+    private Map<Integer, ReflectiveLookup> lookups;
+    private Map<Integer, ReflectiveLookup> registerLookups;
+    private LoopTracker loops;
 
     public ReflectionIssues(BugReporter bugReporter) {
         this.bugReporter = bugReporter;
@@ -60,14 +102,102 @@ public class ReflectionIssues extends BytecodeScanningDetector {
     @Override
     public void visitClassContext(ClassContext clsContext) {
         if (ACCESSIBLE_OBJECT_CLASS != null) {
-            super.visitClassContext(clsContext);
+            try {
+                stack = new OpcodeStack();
+                lookups = new LinkedHashMap<>();
+                registerLookups = new HashMap<>();
+                loops = new LoopTracker();
+                super.visitClassContext(clsContext);
+            } finally {
+                stack = null;
+                lookups = null;
+                registerLookups = null;
+                loops = null;
+            }
         }
     }
 
+    /**
+     * implements the visitor to reset the stack, and to report the reflective
+     * lookups of the method that weren't cached. Static initializers only run
+     * once, and so are not checked for this.
+     *
+     * @param obj the context object of the currently parsed code block
+     */
     @Override
-    public void sawOpcode(int seen) {
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        lookups.clear();
+        registerLookups.clear();
+        loops.clear();
+        super.visitCode(obj);
+
+        if (Values.STATIC_INITIALIZER.equals(getMethodName())) {
+            return;
+        }
+
+        Map<String, Integer> lookupCounts = new HashMap<>();
+        for (ReflectiveLookup lookup : lookups.values()) {
+            if (!lookup.isCached) {
+                Integer count = lookupCounts.get(lookup.description);
+                lookupCounts.put(lookup.description, Integer.valueOf((count == null) ? 1 : count.intValue() + 1));
+            }
+        }
+
+        for (ReflectiveLookup lookup : lookups.values()) {
+            if (!lookup.isCached) {
+                int priority;
+                if (lookupCounts.get(lookup.description).intValue() > 1) {
+                    priority = HIGH_PRIORITY;
+                } else if (loops.isInLoop(lookup.pc) || lookup.isUsed) {
+                    priority = NORMAL_PRIORITY;
+                } else {
+                    priority = LOW_PRIORITY;
+                }
+                bugReporter.reportBug(new BugInstance(this, BugType.RFI_UNCACHED_REFLECTIVE_LOOKUP.name(), priority)
+                        .addClass(this).addMethod(this).addSourceLine(this, lookup.pc).addString(lookup.description));
+            }
+        }
+    }
 
+    @Override
+    public void sawOpcode(int seen) {
+        Integer userValue = null;
         try {
+            stack.precomputation(this);
+
+            switch (seen) {
+            case Const.INVOKEVIRTUAL:
+            case Const.INVOKESTATIC:
+                checkForEscapingArguments(seen);
+                userValue = processReflectiveCall();
+                break;
+
+            case Const.INVOKEINTERFACE:
+            case Const.INVOKESPECIAL:
+            case Const.INVOKEDYNAMIC:
+                checkForEscapingArguments(seen);
+                break;
+
+            case Const.PUTFIELD:
+            case Const.PUTSTATIC:
+            case Const.ARETURN:
+                if (stack.getStackDepth() > 0) {
+                    ReflectiveLookup lookup = getLookup(stack.getStackItem(0));
+                    if (lookup != null) {
+                        lookup.isCached = true;
+                    }
+                }
+                break;
+
+            default:
+                if (OpcodeUtils.isAStore(seen)) {
+                    recordStore(seen);
+                }
+                loops.sawOpcode(this, seen);
+                break;
+            }
+
             if (seen == Const.INVOKEVIRTUAL) {
                 QMethod m = new QMethod(getNameConstantOperand(), getSigConstantOperand());
                 if (SETACCESSIBLE.equals(m)) {
@@ -88,6 +218,200 @@ public class ReflectionIssues extends BytecodeScanningDetector {
             }
         } catch (ClassNotFoundException e) {
             bugReporter.reportMissingClass(e);
+        } finally {
+            stack.sawOpcode(this, seen);
+            if ((userValue != null) && (stack.getStackDepth() > 0)) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                itm.setUserValue(userValue);
+            }
+        }
+    }
+
+    /**
+     * records lookups of classes, methods, fields and constructors whose names
+     * are constants or fields, and notes when the looked up object is used, to
+     * invoke a method, create an object, or access a field. A lookup made on the
+     * result of another lookup, such as Class.forName("x").getMethod("y"), is
+     * recorded as one lookup.
+     *
+     * @return the user value to mark the looked up object with, or null
+     */
+    @Nullable
+    private Integer processReflectiveCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+        String sig = getSigConstantOperand();
+        int numParms = SignatureUtils.getNumParameters(sig);
+        boolean isStatic = getOpcode() == Const.INVOKESTATIC;
+        if (stack.getStackDepth() < (isStatic ? numParms : numParms + 1)) {
+            return null;
+        }
+
+        if (!isStatic && REFLECTIVE_USE_METHODS.contains(clsName + '#' + methodName)) {
+            ReflectiveLookup lookup = getLookup(stack.getStackItem(numParms));
+            if (lookup != null) {
+                lookup.isUsed = true;
+            }
+            return null;
+        }
+
+        if (!CLASS_CLASS.equals(clsName)) {
+            return null;
+        }
+
+        String description;
+        if (isStatic) {
+            if (!"forName".equals(methodName) || (numParms == 0)) {
+                return null;
+            }
+            String name = getNamingKey(stack.getStackItem(numParms - 1));
+            if (name == null) {
+                return null;
+            }
+            description = "Class.forName(" + name + ')';
+        } else {
+            if (!LOOKUP_METHODS.contains(methodName)) {
+                return null;
+            }
+            String name = "";
+            if (!methodName.endsWith("Constructor")) {
+                name = getNamingKey(stack.getStackItem(numParms - 1));
+                if (name == null) {
+                    return null;
+                }
+            }
+            description = getReceiverKey(stack.getStackItem(numParms)) + '.' + methodName + '(' + name + ')';
+        }
+
+        Integer pc = Integer.valueOf(getPC());
+        lookups.put(pc, new ReflectiveLookup(getPC(), description));
+        return pc;
+    }
+
+    /**
+     * marks lookups passed to a method as cached, as they are handed off to code,
+     * such as Map.put or computeIfAbsent, that may hold on to them. Lambdas that
+     * capture them are treated the same way. Arguments to reflection methods
+     * themselves are ignored, as those just use the lookup.
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    private void checkForEscapingArguments(int seen) {
+        if (seen != Const.INVOKEDYNAMIC) {
+            String clsName = getClassConstantOperand();
+            if (CLASS_CLASS.equals(clsName) || clsName.startsWith(REFLECT_PACKAGE_PREFIX)) {
+                return;
+            }
+        }
+
+        int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
+        for (int i = 0; (i < numParms) && (i < stack.getStackDepth()); i++) {
+            ReflectiveLookup lookup = getLookup(stack.getStackItem(i));
+            if (lookup != null) {
+                lookup.isCached = true;
+            }
+        }
+    }
+
+    /**
+     * returns a key for the class or member name passed to a lookup, if it is a
+     * constant or a field, as then the same lookup is done every time
+     *
+     * @param item the name argument
+     * @return the key for the name, or null if it isn't fixed
+     */
+    @Nullable
+    private static String getNamingKey(OpcodeStack.Item item) {
+        Object constant = item.getConstant();
+        if (constant instanceof String) {
+            return "\"" + constant + '"';
+        }
+        XField field = item.getXField();
+        if (field != null) {
+            return field.getName();
+        }
+        return null;
+    }
+
+    /**
+     * returns a key for the class that a method, field or constructor is looked up
+     * on, folding in a lookup of that class in the same method
+     *
+     * @param receiver the class being searched
+     * @return the key for the class
+     */
+    private String getReceiverKey(OpcodeStack.Item receiver) {
+        ReflectiveLookup classLookup = getLookup(receiver);
+        if (classLookup != null) {
+            lookups.remove(Integer.valueOf(classLookup.pc));
+            return classLookup.description;
+        }
+        Object constant = receiver.getConstant();
+        if (constant != null) {
+            return constant.toString().replace('/', '.');
+        }
+        XField field = receiver.getXField();
+        if (field != null) {
+            return field.getName();
+        }
+        return "Class";
+    }
+
+    /**
+     * records the lookup, if any, that is stored in a register, as the stack's
+     * user value doesn't survive the merges at branch targets, and so later loads
+     * of the register may not carry it
+     *
+     * @param seen the store opcode of the currently parsed instruction
+     */
+    private void recordStore(int seen) {
+        if (stack.getStackDepth() > 0) {
+            Integer reg = Integer.valueOf(RegisterUtils.getAStoreReg(this, seen));
+            ReflectiveLookup lookup = getLookup(stack.getStackItem(0));
+            if (lookup != null) {
+                registerLookups.put(reg, lookup);
+            } else {
+                registerLookups.remove(reg);
+            }
+        }
+    }
+
+    @Nullable
+    private ReflectiveLookup getLookup(OpcodeStack.Item item) {
+        Object uv = item.getUserValue();
+        if (uv instanceof Integer) {
+            return lookups.get(uv);
+        }
+
+        int reg = item.getRegisterNumber();
+        if (reg >= 0) {
+            ReflectiveLookup lookup = registerLookups.get(Integer.valueOf(reg));
+            // a lookup folded into a later one is no longer reported on its own
+            if ((lookup != null) && lookups.containsKey(Integer.valueOf(lookup.pc))) {
+                return lookup;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * holds a reflective lookup made in a method, and whether its result is cached
+     * in a field, returned or handed to another method, or used
+     */
+    static class ReflectiveLookup {
+        final int pc;
+        final String description;
+        boolean isCached;
+        boolean isUsed;
+
+        ReflectiveLookup(int lookupPC, String desc) {
+            pc = lookupPC;
+            description = desc;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
         }
     }
 }
@@ -0,0 +1,254 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+
+import com.mebigfatguy.fbcontrib.collect.MethodInfo;
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for regular expressions, given as constants, that are compiled again
+ * on every execution of a method. String.matches, replaceAll, replaceFirst and
+ * split (when the expression isn't one the jdk splits on without a regex), as
+ * well as Pattern.compile and Pattern.matches all compile the expression each
+ * time they are called. Such expressions should be compiled once into a static
+ * final Pattern. Sites in loops, or in methods with many callers, are reported
+ * at a higher priority.
+ */
+public class RegexRecompilation extends BytecodeScanningDetector {
+
+    private static final String SLASHED_PATTERN = "java/util/regex/Pattern";
+
+    /** the string methods that compile a regex, and the stack offset of the regex */
+    private static final Map<String, Integer> STRING_REGEX_METHODS = new HashMap<>();
+    static {
+        STRING_REGEX_METHODS.put("matches(Ljava/lang/String;)Z", Values.ZERO);
+        STRING_REGEX_METHODS.put("replaceAll(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", Values.ONE);
+        STRING_REGEX_METHODS.put("replaceFirst(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", Values.ONE);
+        STRING_REGEX_METHODS.put("split(Ljava/lang/String;)[Ljava/lang/String;", Values.ZERO);
+        STRING_REGEX_METHODS.put("split(Ljava/lang/String;I)[Ljava/lang/String;", Values.ONE);
+    }
+
+    /** the pattern methods that compile a regex, and the stack offset of the regex */
+    private static final Map<String, Integer> PATTERN_REGEX_METHODS = new HashMap<>();
+    static {
+        PATTERN_REGEX_METHODS.put("compile(Ljava/lang/String;)Ljava/util/regex/Pattern;", Values.ZERO);
+        PATTERN_REGEX_METHODS.put("compile(Ljava/lang/String;I)Ljava/util/regex/Pattern;", Values.ONE);
+        PATTERN_REGEX_METHODS.put("matches(Ljava/lang/String;Ljava/lang/CharSequence;)Z", Values.ONE);
+    }
+
+    /** characters that String.split treats as regex syntax when given alone */
+    private static final String SPLIT_META_CHARACTERS = ".$|()[{^?*+\\";
+
+    /** the number of callers at which a method is considered to be called frequently */
+    private static final int FREQUENT_CALLERS = 3;
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private LoopTracker loops;
+    private List<RegexSite> regexSites;
+    private RegexSite pendingCompile;
+
+    /**
+     * constructs a RRC detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public RegexRecompilation(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the stack and collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            stack = new OpcodeStack();
+            loops = new LoopTracker();
+            regexSites = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            stack = null;
+            loops = null;
+            regexSites = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the stack and collections, and report the
+     * regex compilations found, for all methods but the static initializer, which
+     * only runs once
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        if (Values.STATIC_INITIALIZER.equals(getMethodName())) {
+            return;
+        }
+
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        regexSites.clear();
+        pendingCompile = null;
+        super.visitCode(obj);
+
+        MethodInfo mi = Statistics.getStatistics().getMethodStatistics(getClassName(), getMethodName(),
+                getMethodSig());
+        boolean frequentlyCalled = mi.getNumCallers() >= FREQUENT_CALLERS;
+
+        for (RegexSite site : regexSites) {
+            boolean inLoop = loops.isInLoop(site.pc);
+            int priority;
+            if (inLoop && frequentlyCalled) {
+                priority = HIGH_PRIORITY;
+            } else if (inLoop || frequentlyCalled) {
+                priority = NORMAL_PRIORITY;
+            } else {
+                priority = LOW_PRIORITY;
+            }
+
+            bugReporter.reportBug(new BugInstance(this, site.bugType.name(), priority).addClass(this)
+                    .addMethod(this).addSourceLine(this, site.pc).addString(site.regex));
+        }
+    }
+
+    /**
+     * implements the visitor to look for calls that compile a constant regex, and
+     * to collect loops
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            if (pendingCompile != null) {
+                // a pattern lazily stored into a static field is only compiled once
+                if (seen != Const.PUTSTATIC) {
+                    regexSites.add(pendingCompile);
+                }
+                pendingCompile = null;
+            }
+
+            if (seen == Const.INVOKEVIRTUAL) {
+                if (Values.SLASHED_JAVA_LANG_STRING.equals(getClassConstantOperand())) {
+                    String methodName = getNameConstantOperand();
+                    Integer regexOffset = STRING_REGEX_METHODS.get(methodName + getSigConstantOperand());
+                    if (regexOffset != null) {
+                        String regex = getConstantRegex(regexOffset.intValue());
+                        if ((regex != null) && (!"split".equals(methodName) || !isFastSplit(regex))) {
+                            regexSites.add(
+                                    new RegexSite(getPC(), BugType.RRC_REGEX_RECOMPILED_BY_STRING_METHOD, regex));
+                        }
+                    }
+                }
+            } else if (seen == Const.INVOKESTATIC) {
+                if (SLASHED_PATTERN.equals(getClassConstantOperand())) {
+                    Integer regexOffset = PATTERN_REGEX_METHODS.get(getNameConstantOperand() + getSigConstantOperand());
+                    if (regexOffset != null) {
+                        String regex = getConstantRegex(regexOffset.intValue());
+                        if (regex != null) {
+                            pendingCompile = new RegexSite(getPC(), BugType.RRC_PATTERN_COMPILED_IN_METHOD, regex);
+                        }
+                    }
+                }
+            } else {
+                loops.sawOpcode(this, seen);
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    /**
+     * returns the regex passed to the current call, if it is a string constant
+     *
+     * @param offset the stack offset of the regex parameter
+     * @return the constant regex, or null if it isn't a constant
+     */
+    private String getConstantRegex(int offset) {
+        if (stack.getStackDepth() <= offset) {
+            return null;
+        }
+
+        Object constant = stack.getStackItem(offset).getConstant();
+        return (constant instanceof String) ? (String) constant : null;
+    }
+
+    /**
+     * determines whether String.split will split on this expression without
+     * compiling it, as it does for one character that isn't regex syntax, or one
+     * escaped character that isn't a letter or digit
+     *
+     * @param regex the expression passed to split
+     * @return if split won't compile the expression
+     */
+    private static boolean isFastSplit(String regex) {
+        if (regex.length() == 1) {
+            return SPLIT_META_CHARACTERS.indexOf(regex.charAt(0)) < 0;
+        }
+
+        if ((regex.length() == 2) && (regex.charAt(0) == '\\')) {
+            char c = regex.charAt(1);
+            return ((c < '0') || (c > '9')) && ((c < 'a') || (c > 'z')) && ((c < 'A') || (c > 'Z'));
+        }
+
+        return false;
+    }
+
+    /**
+     * holds a call that compiles a constant regex
+     */
+    static class RegexSite {
+        final int pc;
+        final BugType bugType;
+        final String regex;
+
+        RegexSite(int sitePC, BugType type, String constantRegex) {
+            pc = sitePC;
+            bugType = type;
+            regex = constantRegex;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for locks that are acquired and released on every iteration of a loop,
+ * where the lock is the same on each iteration. This includes synchronized
+ * blocks, java.util.concurrent Lock.lock calls, and calls to the methods of
+ * synchronized collections, such as Vector, Hashtable, or those returned from
+ * Collections.synchronizedXxx. Acquiring the lock once around the loop, or
+ * batching the work, avoids the repeated acquisition and the contention it
+ * causes. Loops that block, such as event loops, are ignored, as holding the lock
+ * across them would starve other threads.
+ */
+public class RepeatedLockingInLoop extends BytecodeScanningDetector {
+
+    private static final Set<String> SYNCHRONIZED_COLLECTIONS = UnmodifiableSet.create("java/util/Vector",
+            "java/util/Stack", "java/util/Hashtable", "java/util/Properties");
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private LoopTracker loops;
+    private List<Integer> blockingCalls;
+    private List<LockSite> lockSites;
+    private Set<Integer> syncCollectionRegisters;
+    private Set<String> syncCollectionFields;
+    private Map<String, List<BugInstance>> fieldCollectionBugs;
+
+    /**
+     * constructs a RLIL detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public RepeatedLockingInLoop(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the stack and collections, and
+     * report the uses of fields that hold synchronized collections, once all the
+     * field assignments have been seen
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            stack = new OpcodeStack();
+            loops = new LoopTracker();
+            blockingCalls = new ArrayList<>();
+            lockSites = new ArrayList<>();
+            syncCollectionRegisters = new HashSet<>();
+            syncCollectionFields = new HashSet<>();
+            fieldCollectionBugs = new HashMap<>();
+            super.visitClassContext(classContext);
+
+            for (Map.Entry<String, List<BugInstance>> entry : fieldCollectionBugs.entrySet()) {
+                if (syncCollectionFields.contains(entry.getKey())) {
+                    for (BugInstance bug : entry.getValue()) {
+                        bugReporter.reportBug(bug);
+                    }
+                }
+            }
+        } finally {
+            stack = null;
+            loops = null;
+            blockingCalls = null;
+            lockSites = null;
+            syncCollectionRegisters = null;
+            syncCollectionFields = null;
+            fieldCollectionBugs = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the stack and collections, and report the
+     * locks taken in loops, on a lock that doesn't change in the loop
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        blockingCalls.clear();
+        lockSites.clear();
+        syncCollectionRegisters.clear();
+        super.visitCode(obj);
+
+        for (LockSite site : lockSites) {
+            int depth = 0;
+            boolean reportable = true;
+            for (LoopTracker.Loop loop : loops.getLoops()) {
+                if (loop.isInLoop(site.pc)) {
+                    depth++;
+                    reportable &= isInvariant(site, loop) && !isBlocking(loop);
+                }
+            }
+
+            if ((depth > 0) && reportable) {
+                reportLockSite(site, depth);
+            }
+        }
+    }
+
+    /**
+     * implements the visitor to collect loops, register stores, blocking calls,
+     * and lock acquisitions
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        boolean createsSyncCollection = false;
+        try {
+            if (seen == Const.MONITORENTER) {
+                addLockSite(BugType.RLIL_SYNCHRONIZED_BLOCK_IN_LOOP, 0);
+            } else if (OpcodeUtils.isStandardInvoke(seen)) {
+                createsSyncCollection = processCall(seen);
+            } else if ((seen == Const.PUTFIELD) || (seen == Const.PUTSTATIC)) {
+                if ((stack.getStackDepth() > 0) && isSyncCollection(stack.getStackItem(0))) {
+                    syncCollectionFields.add(getNameConstantOperand());
+                }
+            } else {
+                if (OpcodeUtils.isAStore(seen) && (stack.getStackDepth() > 0)) {
+                    Integer reg = Integer.valueOf(RegisterUtils.getAStoreReg(this, seen));
+                    if (isSyncCollection(stack.getStackItem(0))) {
+                        syncCollectionRegisters.add(reg);
+                    } else {
+                        syncCollectionRegisters.remove(reg);
+                    }
+                }
+                loops.sawOpcode(this, seen);
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+            if (createsSyncCollection && (stack.getStackDepth() > 0)) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                itm.setUserValue(Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * records calls that acquire a lock, and calls that block
+     *
+     * @param seen the invoke opcode of the call
+     * @return whether the call returns a synchronized collection wrapper
+     */
+    private boolean processCall(int seen) {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+
+        if (seen == Const.INVOKESTATIC) {
+            return "java/util/Collections".equals(clsName) && methodName.startsWith("synchronized");
+        }
+
+        int cost = CostUtils.getCallCost(clsName, methodName);
+        if ((cost & (CostUtils.COST_BLOCKING | CostUtils.COST_IO)) != 0) {
+            blockingCalls.add(Integer.valueOf(getPC()));
+        } else if (cost == CostUtils.COST_LOCK) {
+            addLockSite(BugType.RLIL_LOCK_IN_LOOP, 0);
+        } else if (seen != Const.INVOKESPECIAL) {
+            int receiverOffset = SignatureUtils.getNumParameters(getSigConstantOperand());
+            if (SYNCHRONIZED_COLLECTIONS.contains(clsName)) {
+                addLockSite(BugType.RLIL_SYNCHRONIZED_COLLECTION_IN_LOOP, receiverOffset);
+            } else if (stack.getStackDepth() > receiverOffset) {
+                OpcodeStack.Item itm = stack.getStackItem(receiverOffset);
+                if (isSyncCollection(itm)) {
+                    addLockSite(BugType.RLIL_SYNCHRONIZED_COLLECTION_IN_LOOP, receiverOffset);
+                } else if ((itm.getXField() != null) && clsName.startsWith("java/util/")) {
+                    LockSite site = buildLockSite(BugType.RLIL_SYNCHRONIZED_COLLECTION_IN_LOOP, itm);
+                    if (site != null) {
+                        site.fieldName = itm.getXField().getName();
+                        lockSites.add(site);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns whether a stack item is a synchronized collection wrapper, either
+     * marked as created by Collections.synchronizedXxx, or loaded from a register
+     * one was stored in, as the mark doesn't survive the merges at loop headers
+     *
+     * @param itm the stack item to check
+     * @return if the item is a synchronized collection wrapper
+     */
+    private boolean isSyncCollection(OpcodeStack.Item itm) {
+        if (itm.getUserValue() != null) {
+            return true;
+        }
+        int reg = itm.getRegisterNumber();
+        return (reg >= 0) && syncCollectionRegisters.contains(Integer.valueOf(reg));
+    }
+
+    private void addLockSite(BugType bugType, int lockOffset) {
+        if (stack.getStackDepth() > lockOffset) {
+            LockSite site = buildLockSite(bugType, stack.getStackItem(lockOffset));
+            if (site != null) {
+                lockSites.add(site);
+            }
+        }
+    }
+
+    /**
+     * builds the description of a lock acquisition, if the lock is something that
+     * can be followed: this, a field, a class literal or a local variable
+     *
+     * @param bugType the kind of lock acquisition
+     * @param itm     the stack item holding the lock
+     * @return the lock site, or null if the lock can't be followed
+     */
+    @Nullable
+    private LockSite buildLockSite(BugType bugType, OpcodeStack.Item itm) {
+        int reg = itm.getRegisterNumber();
+        XField field = itm.getXField();
+        String description;
+        if (field != null) {
+            description = field.getName();
+            reg = -1;
+        } else if (reg == 0 && !getMethod().isStatic()) {
+            description = "this";
+            reg = -1;
+        } else if (reg >= 0) {
+            description = RegisterUtils.getLocalVariableName(getMethod().getLocalVariableTable(), reg, getPC());
+        } else if (itm.getConstant() != null) {
+            description = String.valueOf(itm.getConstant());
+            if ("Ljava/lang/Class;".equals(itm.getSignature())) {
+                description = description.replace('/', '.') + ".class";
+            }
+        } else {
+            return null;
+        }
+
+        return new LockSite(bugType, getPC(), reg, description);
+    }
+
+    private void reportLockSite(LockSite site, int depth) {
+        int priority;
+        if (site.bugType == BugType.RLIL_SYNCHRONIZED_COLLECTION_IN_LOOP) {
+            priority = (depth > 1) ? NORMAL_PRIORITY : LOW_PRIORITY;
+        } else {
+            priority = (depth > 1) ? HIGH_PRIORITY : NORMAL_PRIORITY;
+        }
+
+        BugInstance bug = new BugInstance(this, site.bugType.name(), priority).addClass(this).addMethod(this)
+                .addSourceLine(this, site.pc).addString(site.lockDescription + ", nested " + depth + " loop(s) deep");
+        if (site.fieldName == null) {
+            bugReporter.reportBug(bug);
+        } else {
+            List<BugInstance> bugs = fieldCollectionBugs.get(site.fieldName);
+            if (bugs == null) {
+                bugs = new ArrayList<>();
+                fieldCollectionBugs.put(site.fieldName, bugs);
+            }
+            bugs.add(bug);
+        }
+    }
+
+    /**
+     * determines whether the register holding the lock isn't stored to inside a
+     * loop, and so is the same lock on every iteration
+     *
+     * @param site the lock acquisition
+     * @param loop the loop the lock is acquired in
+     * @return if the lock is loop invariant
+     */
+    private boolean isInvariant(LockSite site, LoopTracker.Loop loop) {
+        return (site.lockReg < 0) || !loops.isStoredInLoop(site.lockReg, loop);
+    }
+
+    private boolean isBlocking(LoopTracker.Loop loop) {
+        for (Integer callPC : blockingCalls) {
+            if (loop.isInLoop(callPC.intValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * holds a lock acquisition, and the lock that is acquired
+     */
+    static class LockSite {
+        final BugType bugType;
+        final int pc;
+        final int lockReg;
+        final String lockDescription;
+        String fieldName;
+
+        LockSite(BugType type, int sitePC, int reg, String description) {
+            bugType = type;
+            pc = sitePC;
+            lockReg = reg;
+            lockDescription = description;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
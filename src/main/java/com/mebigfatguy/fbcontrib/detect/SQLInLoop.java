@@ -19,16 +19,20 @@
 package com.mebigfatguy.fbcontrib.detect;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.Code;
 
+import com.mebigfatguy.fbcontrib.collect.Statistics;
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.FQMethod;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.SQLUtils;
 import com.mebigfatguy.fbcontrib.utils.ToString;
-import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
 
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
@@ -39,16 +43,17 @@ import edu.umd.cs.findbugs.ba.ClassContext;
  * looks for the execution of sql queries inside a loop. This pattern tends to
  * be inefficient, and often can be improved upon, by collecting all the keys
  * needed for the query and issuing just one query using an in clause with all
- * the keys for all the queries previously needed in the loop.
+ * the keys for all the queries previously needed in the loop. Besides direct jdbc,
+ * jpa and spring jdbc calls, calls to application methods that were found, in the
+ * first pass, to run queries themselves or through other methods, are reported
+ * along with the chain of calls down to the query. Updates made directly on
+ * prepared statements are left to UnbatchedDatabaseWrites, which reports the
+ * ones that could be batched.
  */
 public class SQLInLoop extends BytecodeScanningDetector {
-    private static final Set<String> queryClasses = UnmodifiableSet.create("java/sql/Statement",
-            "java/sql/PreparedStatement", "java/sql/CallableStatement");
-
-    private static final Set<String> queryMethods = UnmodifiableSet.create("execute", "executeQuery");
 
     private final BugReporter bugReporter;
-    List<Integer> queryLocations;
+    Map<Integer, List<FQMethod>> queryLocations;
     List<LoopLocation> loops;
 
     /**
@@ -69,7 +74,7 @@ public class SQLInLoop extends BytecodeScanningDetector {
     @Override
     public void visitClassContext(ClassContext classContext) {
         try {
-            queryLocations = new ArrayList<>();
+            queryLocations = new LinkedHashMap<>();
             loops = new ArrayList<>();
             super.visitClassContext(classContext);
         } finally {
@@ -89,11 +94,18 @@ public class SQLInLoop extends BytecodeScanningDetector {
         queryLocations.clear();
         loops.clear();
         super.visitCode(obj);
-        for (Integer qLoc : queryLocations) {
+        for (Map.Entry<Integer, List<FQMethod>> qLoc : queryLocations.entrySet()) {
+            int pc = qLoc.getKey().intValue();
             for (LoopLocation lLoc : loops) {
-                if (lLoc.isInLoop(qLoc.intValue())) {
-                    bugReporter.reportBug(new BugInstance(this, BugType.SIL_SQL_IN_LOOP.name(), NORMAL_PRIORITY)
-                            .addClass(this).addMethod(this).addSourceLine(this, qLoc.intValue()));
+                if (lLoc.isInLoop(pc)) {
+                    List<FQMethod> path = qLoc.getValue();
+                    BugInstance bi = new BugInstance(this, BugType.SIL_SQL_IN_LOOP.name(),
+                            path.size() > 2 ? LOW_PRIORITY : NORMAL_PRIORITY).addClass(this).addMethod(this)
+                                    .addSourceLine(this, pc);
+                    if (!path.isEmpty()) {
+                        bi.addString(describePath(path));
+                    }
+                    bugReporter.reportBug(bi);
                     break;
                 }
             }
@@ -107,12 +119,23 @@ public class SQLInLoop extends BytecodeScanningDetector {
      */
     @Override
     public void sawOpcode(int seen) {
-        if (seen == Const.INVOKEINTERFACE) {
+        if ((seen == Const.INVOKEINTERFACE) || (seen == Const.INVOKEVIRTUAL) || (seen == Const.INVOKESTATIC)
+                || (seen == Const.INVOKESPECIAL)) {
             String clsName = getClassConstantOperand();
             String methodName = getNameConstantOperand();
 
-            if (queryClasses.contains(clsName) && queryMethods.contains(methodName)) {
-                queryLocations.add(Integer.valueOf(getPC()));
+            if (SQLUtils.isPreparedUpdateMethod(clsName, methodName)) {
+                return;
+            }
+
+            if (SQLUtils.isQueryMethod(clsName, methodName)) {
+                queryLocations.put(Integer.valueOf(getPC()), Collections.<FQMethod>emptyList());
+            } else {
+                List<FQMethod> path = Statistics.getStatistics().getQueryPath(clsName, methodName,
+                        getSigConstantOperand());
+                if (!path.isEmpty()) {
+                    queryLocations.put(Integer.valueOf(getPC()), path);
+                }
             }
         } else if (OpcodeUtils.isBranch(seen)) {
             int branchTarget = getBranchTarget();
@@ -124,7 +147,26 @@ public class SQLInLoop extends BytecodeScanningDetector {
     }
 
     /**
-     * holds the start and end position of a loop
+     * builds a readable description of the calls that lead from a method called
+     * in a loop to the query it runs
+     *
+     * @param path the call chain, starting with the method called in the loop
+     * @return the description of the call chain
+     */
+    private static String describePath(List<FQMethod> path) {
+        StringBuilder sb = new StringBuilder("Query reached through ");
+        String separator = "";
+        for (FQMethod method : path) {
+            String clsName = method.getClassName();
+            sb.append(separator).append(clsName.substring(clsName.lastIndexOf('/') + 1)).append('.')
+                    .append(method.getMethodName());
+            separator = " -> ";
+        }
+        return sb.toString();
+    }
+
+    /**
+     * holds the start and end position of a loop, as found by a backwards branch
      */
     private static class LoopLocation {
         private final int startPC;
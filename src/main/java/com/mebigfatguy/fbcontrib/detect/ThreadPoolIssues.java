@@ -0,0 +1,427 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.collect.MethodInfo;
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.RegisterUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.ba.AnalysisContext;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for issues with how thread pools and threads are created, including
+ * <ul>
+ * <li>executors, fork join pools or threads that are created in a method, and
+ * are neither kept in a field nor returned, so that a new one is started on
+ * every call</li>
+ * <li>cached thread pools, which start a new thread whenever all threads are
+ * busy, without limit</li>
+ * <li>thread pool executors whose work queue is a LinkedBlockingQueue without
+ * a capacity, so that tasks queue up without limit, and the maximum pool size
+ * is never used</li>
+ * </ul>
+ */
+@CustomUserValue
+public class ThreadPoolIssues extends BytecodeScanningDetector {
+
+    private static final String EXECUTORS_CLASS = "java/util/concurrent/Executors";
+    private static final String THREAD_POOL_EXECUTOR_CLASS = "java/util/concurrent/ThreadPoolExecutor";
+    private static final String BLOCKING_QUEUE_SIG = "Ljava/util/concurrent/BlockingQueue;";
+    private static final String CONCURRENT_PACKAGE_PREFIX = "java/util/concurrent/";
+
+    private static final Set<String> POOL_FACTORY_METHODS = UnmodifiableSet.create("newCachedThreadPool",
+            "newFixedThreadPool", "newSingleThreadExecutor", "newScheduledThreadPool",
+            "newSingleThreadScheduledExecutor", "newWorkStealingPool");
+
+    private static final Set<String> POOL_CLASSES = UnmodifiableSet.create(THREAD_POOL_EXECUTOR_CLASS,
+            "java/util/concurrent/ScheduledThreadPoolExecutor", "java/util/concurrent/ForkJoinPool");
+
+    private static final Set<String> UNBOUNDED_QUEUE_CLASSES = UnmodifiableSet.create(
+            "java/util/concurrent/LinkedBlockingQueue", "java/util/concurrent/LinkedBlockingDeque");
+
+    private static final Set<String> NO_CAPACITY_SIGS = UnmodifiableSet.create("()V", "(Ljava/util/Collection;)V");
+
+    /** marks a queue created without a capacity */
+    private static final String UNBOUNDED_QUEUE = "unbounded queue";
+
+    private static final String THREAD_CLASS = "java/lang/Thread";
+
+    /** the number of callers of a method at which it is considered called repeatedly */
+    private static final int FREQUENT_CALLERS = 3;
+
+    private final BugReporter bugReporter;
+    private JavaClass threadClass;
+    private final Map<String, Boolean> threadClasses = new HashMap<>();
+    private OpcodeStack stack;
+    private Map<Integer, PoolCreation> creations;
+    private Map<Integer, List<PoolCreation>> registerCreations;
+    private LoopTracker loops;
+
+    /**
+     * constructs a TPI detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public ThreadPoolIssues(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+
+        try {
+            threadClass = Repository.lookupClass(THREAD_CLASS);
+        } catch (ClassNotFoundException cnfe) {
+            bugReporter.reportMissingClass(cnfe);
+        }
+    }
+
+    /**
+     * implements the visitor to create and clear the stack and collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            stack = new OpcodeStack();
+            creations = new HashMap<>();
+            registerCreations = new HashMap<>();
+            loops = new LoopTracker();
+            super.visitClassContext(classContext);
+        } finally {
+            stack = null;
+            creations = null;
+            registerCreations = null;
+            loops = null;
+        }
+    }
+
+    /**
+     * implements the visitor to report the executors and threads created in the
+     * method that were not kept beyond the call. Initializers, static methods and
+     * main methods usually run once, and so are not checked for this. Creations
+     * in loops are reported at high priority, and otherwise the priority depends
+     * on how many callers the method has.
+     *
+     * @param obj the context object of the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        String methodName = getMethodName();
+        if (getMethod().isStatic() || Values.CONSTRUCTOR.equals(methodName) || "main".equals(methodName)) {
+            return;
+        }
+
+        stack.resetForMethodEntry(this);
+        creations.clear();
+        registerCreations.clear();
+        loops.clear();
+        super.visitCode(obj);
+
+        MethodInfo mi = Statistics.getStatistics().getMethodStatistics(getClassName(), methodName, getMethodSig());
+        int callPriority = mi.getNumCallers() >= FREQUENT_CALLERS ? NORMAL_PRIORITY : LOW_PRIORITY;
+        for (Map.Entry<Integer, PoolCreation> entry : creations.entrySet()) {
+            PoolCreation creation = entry.getValue();
+            if (!creation.isKept) {
+                int pc = entry.getKey().intValue();
+                bugReporter.reportBug(new BugInstance(this,
+                        creation.isThread ? BugType.TPI_THREAD_CREATED_PER_CALL.name()
+                                : BugType.TPI_EXECUTOR_CREATED_PER_CALL.name(),
+                        loops.isInLoop(pc) ? HIGH_PRIORITY : callPriority).addClass(this).addMethod(this)
+                                .addSourceLine(this, pc).addString(creation.description));
+            }
+        }
+    }
+
+    /**
+     * implements the visitor to find executor and thread creations, and the uses
+     * of them that keep them past the call
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        Object userValue = null;
+        try {
+            stack.precomputation(this);
+
+            switch (seen) {
+            case Const.NEW:
+                if (isThread(getClassConstantOperand(), getDottedClassConstantOperand())) {
+                    userValue = addCreation(true, getDottedClassConstantOperand());
+                }
+                break;
+
+            case Const.INVOKESPECIAL:
+                userValue = processConstructor();
+                checkForEscapingArguments(seen);
+                break;
+
+            case Const.INVOKESTATIC:
+                userValue = processStaticCall();
+                checkForEscapingArguments(seen);
+                break;
+
+            case Const.INVOKEVIRTUAL:
+            case Const.INVOKEINTERFACE:
+            case Const.INVOKEDYNAMIC:
+                checkForEscapingArguments(seen);
+                break;
+
+            case Const.PUTFIELD:
+            case Const.PUTSTATIC:
+            case Const.ARETURN:
+            case Const.AASTORE:
+                if (stack.getStackDepth() > 0) {
+                    markKept(stack.getStackItem(0));
+                }
+                break;
+
+            default:
+                if (OpcodeUtils.isAStore(seen)) {
+                    recordStore(seen);
+                }
+                loops.sawOpcode(this, seen);
+                break;
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+            if ((userValue != null) && (stack.getStackDepth() > 0)) {
+                OpcodeStack.Item itm = stack.getStackItem(0);
+                itm.setUserValue(userValue);
+            }
+        }
+    }
+
+    /**
+     * looks for constructors of thread pools, and of work queues without a
+     * capacity, and reports thread pool executors built on such a queue
+     *
+     * @return the user value to mark the constructed object with, or null
+     */
+    private Object processConstructor() {
+        if (!Values.CONSTRUCTOR.equals(getNameConstantOperand())) {
+            return null;
+        }
+
+        String clsName = getClassConstantOperand();
+        String sig = getSigConstantOperand();
+        if (UNBOUNDED_QUEUE_CLASSES.contains(clsName)) {
+            return NO_CAPACITY_SIGS.contains(sig) ? UNBOUNDED_QUEUE : null;
+        }
+
+        if (!POOL_CLASSES.contains(clsName)) {
+            return null;
+        }
+
+        if (THREAD_POOL_EXECUTOR_CLASS.equals(clsName)) {
+            List<String> parmSigs = SignatureUtils.getParameterSignatures(sig);
+            int queueIndex = parmSigs.indexOf(BLOCKING_QUEUE_SIG);
+            int queueDepth = parmSigs.size() - 1 - queueIndex;
+            if ((queueIndex >= 0) && (stack.getStackDepth() > queueDepth)
+                    && UNBOUNDED_QUEUE.equals(stack.getStackItem(queueDepth).getUserValue())) {
+                bugReporter.reportBug(new BugInstance(this, BugType.TPI_UNBOUNDED_WORK_QUEUE.name(), NORMAL_PRIORITY)
+                        .addClass(this).addMethod(this).addSourceLine(this));
+            }
+        }
+
+        if ((stack.getStackDepth() > SignatureUtils.getNumParameters(sig)) && !isSuperConstructorCall()) {
+            return addCreation(false, getDottedClassConstantOperand());
+        }
+        return null;
+    }
+
+    /**
+     * looks for the Executors factory methods that create thread pools, and
+     * reports cached thread pools, which have no limit on their threads
+     *
+     * @return the user value to mark the created pool with, or null
+     */
+    private Object processStaticCall() {
+        if (!EXECUTORS_CLASS.equals(getClassConstantOperand())) {
+            return null;
+        }
+
+        String methodName = getNameConstantOperand();
+        if (!POOL_FACTORY_METHODS.contains(methodName)) {
+            return null;
+        }
+
+        if ("newCachedThreadPool".equals(methodName)) {
+            bugReporter.reportBug(new BugInstance(this, BugType.TPI_UNBOUNDED_CACHED_THREAD_POOL.name(),
+                    NORMAL_PRIORITY).addClass(this).addMethod(this).addSourceLine(this));
+        }
+        return addCreation(false, "Executors." + methodName);
+    }
+
+    private boolean isSuperConstructorCall() {
+        OpcodeStack.Item receiver = stack.getStackItem(SignatureUtils.getNumParameters(getSigConstantOperand()));
+        return receiver.getRegisterNumber() == 0;
+    }
+
+    /**
+     * determines whether a class is a thread. Only application classes are looked
+     * up, as the other non JDK classes may not be available, and are rarely thread
+     * subclasses, and the answers are remembered across classes.
+     *
+     * @param clsName the slashed name of the class that is created
+     * @param dottedClsName the dotted name of the class that is created
+     * @return whether the class is java.lang.Thread or a subclass of it
+     */
+    private boolean isThread(String clsName, String dottedClsName) {
+        if (THREAD_CLASS.equals(clsName)) {
+            return true;
+        }
+        if ((threadClass == null) || clsName.startsWith(Values.JAVA)
+                || !AnalysisContext.currentAnalysisContext().isApplicationClass(dottedClsName)) {
+            return false;
+        }
+
+        Boolean isThread = threadClasses.get(clsName);
+        if (isThread == null) {
+            try {
+                isThread = Boolean.valueOf(Repository.lookupClass(clsName).instanceOf(threadClass));
+            } catch (ClassNotFoundException cnfe) {
+                isThread = Boolean.FALSE;
+            }
+            threadClasses.put(clsName, isThread);
+        }
+        return isThread.booleanValue();
+    }
+
+    private Integer addCreation(boolean isThread, String description) {
+        Integer pc = Integer.valueOf(getPC());
+        creations.put(pc, new PoolCreation(isThread, description));
+        return pc;
+    }
+
+    /**
+     * marks executors and threads passed to methods as kept, as the called method
+     * may hold on to them, except for the java.util.concurrent methods that only
+     * run tasks on them. Lambdas that capture them are treated as keeping them.
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    private void checkForEscapingArguments(int seen) {
+        if ((seen != Const.INVOKEDYNAMIC) && getClassConstantOperand().startsWith(CONCURRENT_PACKAGE_PREFIX)) {
+            return;
+        }
+
+        int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
+        for (int i = 0; (i < numParms) && (i < stack.getStackDepth()); i++) {
+            markKept(stack.getStackItem(i));
+        }
+    }
+
+    /**
+     * records the register an executor or thread is stored in, as the stack's
+     * user value doesn't survive the merges at branch targets, and so later loads
+     * of the register may not carry it
+     *
+     * @param seen the store opcode of the currently parsed instruction
+     */
+    private void recordStore(int seen) {
+        if (stack.getStackDepth() == 0) {
+            return;
+        }
+
+        Object uv = stack.getStackItem(0).getUserValue();
+        if (uv instanceof Integer) {
+            PoolCreation creation = creations.get(uv);
+            if (creation != null) {
+                Integer reg = Integer.valueOf(RegisterUtils.getAStoreReg(this, seen));
+                List<PoolCreation> stored = registerCreations.get(reg);
+                if (stored == null) {
+                    stored = new ArrayList<>();
+                    registerCreations.put(reg, stored);
+                }
+                stored.add(creation);
+            }
+        }
+    }
+
+    /**
+     * marks the executor or thread held in a stack item as kept, whether it is
+     * known from the item itself, or from the register it was loaded from. As
+     * registers aren't followed through branches, anything ever stored in the
+     * register is treated as kept.
+     *
+     * @param itm the stack item that is kept beyond the call
+     */
+    private void markKept(OpcodeStack.Item itm) {
+        Object uv = itm.getUserValue();
+        if (uv instanceof Integer) {
+            PoolCreation creation = creations.get(uv);
+            if (creation != null) {
+                creation.isKept = true;
+            }
+        }
+
+        int reg = itm.getRegisterNumber();
+        if (reg >= 0) {
+            List<PoolCreation> stored = registerCreations.get(Integer.valueOf(reg));
+            if (stored != null) {
+                for (PoolCreation creation : stored) {
+                    creation.isKept = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * holds an executor or thread created in a method, and whether it is kept
+     * beyond the call
+     */
+    static class PoolCreation {
+        final boolean isThread;
+        final String description;
+        boolean isKept;
+
+        PoolCreation(boolean thread, String desc) {
+            isThread = thread;
+            description = desc;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.LoopTracker;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.SQLUtils;
+import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.UnmodifiableSet;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.OpcodeStack;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for database writes done a row at a time inside of loops. A
+ * PreparedStatement that is prepared outside the loop, and only has its
+ * parameters set before each executeUpdate, can instead use addBatch and
+ * executeBatch, sending all the rows in far fewer round trips. Likewise, JPA
+ * persist or merge calls in a loop that never flushes or clears the
+ * EntityManager keep every entity in the persistence context, and defeat jdbc
+ * batching.
+ */
+public class UnbatchedDatabaseWrites extends BytecodeScanningDetector {
+
+    private static final Set<String> STATEMENT_CLASSES = UnmodifiableSet.create("java/sql/PreparedStatement",
+            "java/sql/CallableStatement");
+
+    private static final Set<String> BATCH_METHODS = UnmodifiableSet.create("addBatch", "executeBatch",
+            "executeLargeBatch");
+
+    private static final Set<String> ENTITY_MANAGER_CLASSES = UnmodifiableSet.create(
+            "javax/persistence/EntityManager", "jakarta/persistence/EntityManager");
+
+    private static final Set<String> JPA_WRITE_METHODS = UnmodifiableSet.create("persist", "merge");
+
+    private static final Set<String> JPA_RELEASE_METHODS = UnmodifiableSet.create("flush", "clear");
+
+    private final BugReporter bugReporter;
+    private OpcodeStack stack;
+    private LoopTracker loops;
+    private List<StatementUpdate> updates;
+    private Map<String, List<Integer>> statementStores;
+    private Map<String, List<Integer>> otherStatementUses;
+    private Set<String> batchedStatements;
+    private List<Integer> jpaWrites;
+    private List<Integer> jpaReleases;
+    private StatementUpdate pendingUpdate;
+
+    /**
+     * constructs a UDW detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public UnbatchedDatabaseWrites(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the stack and method collections
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            stack = new OpcodeStack();
+            loops = new LoopTracker();
+            updates = new ArrayList<>();
+            statementStores = new HashMap<>();
+            otherStatementUses = new HashMap<>();
+            batchedStatements = new HashSet<>();
+            jpaWrites = new ArrayList<>();
+            jpaReleases = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            stack = null;
+            loops = null;
+            updates = null;
+            statementStores = null;
+            otherStatementUses = null;
+            batchedStatements = null;
+            jpaWrites = null;
+            jpaReleases = null;
+        }
+    }
+
+    /**
+     * implements the visitor to reset the collections, and report the writes that
+     * could be batched
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        stack.resetForMethodEntry(this);
+        loops.clear();
+        updates.clear();
+        statementStores.clear();
+        otherStatementUses.clear();
+        batchedStatements.clear();
+        jpaWrites.clear();
+        jpaReleases.clear();
+        pendingUpdate = null;
+        super.visitCode(obj);
+
+        reportUnbatchedUpdates();
+        reportUnflushedJPAWrites();
+    }
+
+    /**
+     * implements the visitor to collect loops, and the uses of prepared statements
+     * and entity managers
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        try {
+            if (pendingUpdate != null) {
+                if ((seen == Const.POP) || (seen == Const.POP2)) {
+                    updates.add(pendingUpdate);
+                }
+                pendingUpdate = null;
+            }
+
+            loops.sawOpcode(this, seen);
+            if (seen == Const.INVOKEINTERFACE) {
+                processInterfaceCall();
+            } else if (OpcodeUtils.isAStore(seen)) {
+                addLocation(statementStores, "r" + getRegisterOperand());
+            } else if (seen == Const.PUTFIELD) {
+                addLocation(statementStores, "f" + getNameConstantOperand());
+            }
+        } finally {
+            stack.sawOpcode(this, seen);
+        }
+    }
+
+    private void processInterfaceCall() {
+        String clsName = getClassConstantOperand();
+        String methodName = getNameConstantOperand();
+
+        if (ENTITY_MANAGER_CLASSES.contains(clsName)) {
+            if (JPA_WRITE_METHODS.contains(methodName)) {
+                jpaWrites.add(Integer.valueOf(getPC()));
+            } else if (JPA_RELEASE_METHODS.contains(methodName)) {
+                jpaReleases.add(Integer.valueOf(getPC()));
+            }
+            return;
+        }
+
+        if (!STATEMENT_CLASSES.contains(clsName)) {
+            return;
+        }
+
+        String statementKey = getStatementKey();
+        if (statementKey == null) {
+            return;
+        }
+
+        if (BATCH_METHODS.contains(methodName)) {
+            batchedStatements.add(statementKey);
+        } else if (SQLUtils.isPreparedUpdateMethod(clsName, methodName) && getSigConstantOperand().startsWith("()")) {
+            pendingUpdate = new StatementUpdate(statementKey, getPC());
+        } else if (!methodName.startsWith("set") && !"clearParameters".equals(methodName)) {
+            addLocation(otherStatementUses, statementKey);
+        }
+    }
+
+    /**
+     * returns a key for the statement the current call is made on, based on the
+     * register or field it was loaded from
+     *
+     * @return the key, or null if the statement can't be identified
+     */
+    private String getStatementKey() {
+        int numParms = SignatureUtils.getNumParameters(getSigConstantOperand());
+        if (stack.getStackDepth() <= numParms) {
+            return null;
+        }
+
+        OpcodeStack.Item itm = stack.getStackItem(numParms);
+        int reg = itm.getRegisterNumber();
+        if (reg >= 0) {
+            return "r" + reg;
+        }
+
+        XField field = itm.getXField();
+        if (field != null) {
+            return "f" + field.getName();
+        }
+
+        return null;
+    }
+
+    private void addLocation(Map<String, List<Integer>> locations, String key) {
+        List<Integer> pcs = locations.get(key);
+        if (pcs == null) {
+            pcs = new ArrayList<>();
+            locations.put(key, pcs);
+        }
+        pcs.add(Integer.valueOf(getPC()));
+    }
+
+    private void reportUnbatchedUpdates() {
+        for (StatementUpdate update : updates) {
+            if (batchedStatements.contains(update.statementKey)) {
+                continue;
+            }
+
+            for (LoopTracker.Loop loop : loops.getLoops()) {
+                if (loop.isInLoop(update.pc) && !anyInLoop(statementStores.get(update.statementKey), loop)
+                        && !anyInLoop(otherStatementUses.get(update.statementKey), loop)) {
+                    bugReporter.reportBug(
+                            new BugInstance(this, BugType.UDW_UNBATCHED_STATEMENT_UPDATE.name(), NORMAL_PRIORITY)
+                                    .addClass(this).addMethod(this).addSourceLine(this, update.pc));
+                    break;
+                }
+            }
+        }
+    }
+
+    private void reportUnflushedJPAWrites() {
+        for (Integer writePC : jpaWrites) {
+            boolean inLoop = false;
+            boolean released = false;
+            for (LoopTracker.Loop loop : loops.getLoops()) {
+                if (loop.isInLoop(writePC.intValue())) {
+                    inLoop = true;
+                    if (anyInLoop(jpaReleases, loop)) {
+                        released = true;
+                        break;
+                    }
+                }
+            }
+
+            if (inLoop && !released) {
+                bugReporter.reportBug(
+                        new BugInstance(this, BugType.UDW_UNFLUSHED_JPA_WRITES_IN_LOOP.name(), LOW_PRIORITY)
+                                .addClass(this).addMethod(this).addSourceLine(this, writePC.intValue()));
+            }
+        }
+    }
+
+    private static boolean anyInLoop(List<Integer> pcs, LoopTracker.Loop loop) {
+        if (pcs != null) {
+            for (Integer pc : pcs) {
+                if (loop.isInLoop(pc.intValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * holds an executeUpdate call whose result is ignored, and the statement it
+     * was called on
+     */
+    static class StatementUpdate {
+        final String statementKey;
+        final int pc;
+
+        StatementUpdate(String key, int updatePC) {
+            statementKey = key;
+            pc = updatePC;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
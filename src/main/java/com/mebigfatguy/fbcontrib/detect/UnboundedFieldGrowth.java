@@ -0,0 +1,124 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+
+import com.mebigfatguy.fbcontrib.collect.FieldGrowth;
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.FQMethod;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.FieldAnnotation;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XFactory;
+import edu.umd.cs.findbugs.ba.XField;
+
+/**
+ * looks for collections held in static fields, or in fields of singleton beans,
+ * that are added to, across the whole program, but never removed from or
+ * cleared. Unlike PossibleMemoryBloat, which looks at one class at a time, this
+ * uses the adds and removes collected in the first pass, so collections that
+ * are filled by other classes, directly or through accessor methods, are found.
+ * Collections keyed by values that never repeat, such as session ids, uuids or
+ * timestamps, are certain to grow for as long as the program runs.
+ */
+public class UnboundedFieldGrowth extends BytecodeScanningDetector {
+
+    private static final int MAX_REPORTED_METHODS = 3;
+
+    private final BugReporter bugReporter;
+
+    /**
+     * constructs a UFG detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public UnboundedFieldGrowth(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to report the collection fields of the class that
+     * only grow. Static fields that only grow from within their own class are
+     * left to PossibleMemoryBloat.
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        JavaClass cls = classContext.getJavaClass();
+        String clsName = cls.getClassName();
+        Statistics statistics = Statistics.getStatistics();
+        boolean isBean = statistics.isAutowiredBean(clsName);
+
+        for (Field f : cls.getFields()) {
+            if ((!f.isStatic() && !isBean) || (f.getName().indexOf(Values.SYNTHETIC_MEMBER_CHAR) >= 0)) {
+                continue;
+            }
+
+            XField xf = XFactory.createXField(clsName, f.getName(), f.getSignature(), f.isStatic());
+            FieldGrowth growth = statistics.getFieldGrowth(xf);
+            if ((growth == null) || growth.getShrinks() || growth.getGrowingMethods().isEmpty()) {
+                continue;
+            }
+
+            Set<String> growers = new TreeSet<>();
+            boolean grownElsewhere = false;
+            for (FQMethod method : growth.getGrowingMethods()) {
+                String growerClass = method.getClassName().replace('/', '.');
+                grownElsewhere |= !clsName.equals(growerClass);
+                growers.add(growerClass + '.' + method.getMethodName());
+            }
+
+            if (f.isStatic() && !grownElsewhere) {
+                continue;
+            }
+
+            bugReporter.reportBug(new BugInstance(this, BugType.UFG_UNBOUNDED_FIELD_GROWTH.name(),
+                    growth.hasPerRequestKeys() ? HIGH_PRIORITY : NORMAL_PRIORITY).addClass(cls)
+                            .addField(FieldAnnotation.fromBCELField(cls, f)).addString(describe(growers)));
+        }
+    }
+
+    private static String describe(Set<String> growers) {
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (String grower : growers) {
+            if (count == MAX_REPORTED_METHODS) {
+                sb.append(", ...");
+                break;
+            }
+            if (count > 0) {
+                sb.append(", ");
+            }
+            sb.append(grower);
+            count++;
+        }
+        return sb.toString();
+    }
+}
@@ -30,7 +30,9 @@ import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
 
+import com.mebigfatguy.fbcontrib.utils.BoundedBugReporter;
 import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.GeneratedCodeUtils;
 import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
 import com.mebigfatguy.fbcontrib.utils.SignatureUtils;
 import com.mebigfatguy.fbcontrib.utils.StopOpcodeParsingException;
@@ -55,7 +57,7 @@ public class UnusedParameter extends BytecodeScanningDetector {
             "main", "premain", "agentmain", "writeObject", "readObject", "readObjectNoData", "writeReplace",
             "readResolve", "writeExternal", "readExternal");
 
-    private BugReporter bugReporter;
+    private BoundedBugReporter bugReporter;
 
     private BitSet unusedParms;
     private Map<Integer, Integer> regToParm;
@@ -67,7 +69,7 @@ public class UnusedParameter extends BytecodeScanningDetector {
      * @param bugReporter the sync of bug reports
      */
     public UnusedParameter(BugReporter bugReporter) {
-        this.bugReporter = bugReporter;
+        this.bugReporter = new BoundedBugReporter(bugReporter);
     }
 
     /**
@@ -77,6 +79,10 @@ public class UnusedParameter extends BytecodeScanningDetector {
      */
     @Override
     public void visitClassContext(ClassContext classContext) {
+        if (GeneratedCodeUtils.shouldSkip(this, classContext.getJavaClass())) {
+            return;
+        }
+
         try {
             unusedParms = new BitSet();
             regToParm = new HashMap<>();
@@ -179,4 +185,14 @@ public class UnusedParameter extends BytecodeScanningDetector {
             stack.sawOpcode(this, seen);
         }
     }
+
+    /**
+     * implements the detector to note how many generated classes were skipped, and
+     * how many findings were suppressed by the reporting limits
+     */
+    @Override
+    public void report() {
+        GeneratedCodeUtils.reportSkippedClasses();
+        bugReporter.reportSuppressedBugs();
+    }
 }
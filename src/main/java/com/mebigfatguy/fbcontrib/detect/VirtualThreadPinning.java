@@ -0,0 +1,224 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.detect;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Method;
+
+import com.mebigfatguy.fbcontrib.collect.Statistics;
+import com.mebigfatguy.fbcontrib.utils.BugType;
+import com.mebigfatguy.fbcontrib.utils.CostUtils;
+import com.mebigfatguy.fbcontrib.utils.OpcodeUtils;
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.BytecodeScanningDetector;
+import edu.umd.cs.findbugs.ba.ClassContext;
+
+/**
+ * looks for calls that block, such as i/o, sleeping, waiting, or taking from a
+ * blocking queue, made while holding a monitor, either in a synchronized method
+ * or a synchronized block. A virtual thread that blocks while holding a monitor
+ * pins its carrier thread, so that no other virtual thread can run on it. Calls
+ * to application methods are checked through the costs collected in the first
+ * pass, so blocking done further down the call chain is found as well.
+ */
+public class VirtualThreadPinning extends BytecodeScanningDetector {
+
+    private static final int BLOCKING_COSTS = CostUtils.COST_IO | CostUtils.COST_BLOCKING;
+    private static final String JDK_PACKAGE_PREFIX = Values.JAVA + '/';
+
+    private final BugReporter bugReporter;
+    private List<SyncRegion> syncRegions;
+    private boolean methodIsSynchronized;
+
+    /**
+     * constructs a VTP detector given the reporter to report bugs on
+     *
+     * @param bugReporter the sync of bug reports
+     */
+    public VirtualThreadPinning(BugReporter bugReporter) {
+        this.bugReporter = bugReporter;
+    }
+
+    /**
+     * implements the visitor to create and clear the synchronized regions
+     *
+     * @param classContext the context object for the currently parsed java class
+     */
+    @Override
+    public void visitClassContext(ClassContext classContext) {
+        try {
+            syncRegions = new ArrayList<>();
+            super.visitClassContext(classContext);
+        } finally {
+            syncRegions = null;
+        }
+    }
+
+    /**
+     * looks for methods that are synchronized, or contain MONITORENTER opcodes
+     *
+     * @param method the context object of the current method
+     * @return if the method uses synchronization
+     */
+    private boolean prescreen(Method method) {
+        if (method.isSynchronized()) {
+            return true;
+        }
+        BitSet bytecodeSet = getClassContext().getBytecodeSet(method);
+        return (bytecodeSet != null) && (bytecodeSet.get(Const.MONITORENTER));
+    }
+
+    /**
+     * implements the visitor to only look at methods that hold monitors
+     *
+     * @param obj the context object for the currently parsed code block
+     */
+    @Override
+    public void visitCode(Code obj) {
+        Method m = getMethod();
+        if (prescreen(m)) {
+            methodIsSynchronized = m.isSynchronized();
+            syncRegions.clear();
+            super.visitCode(obj);
+        }
+    }
+
+    /**
+     * implements the visitor to collect synchronized blocks, and report blocking
+     * calls made inside of them
+     *
+     * @param seen the opcode of the currently parsed instruction
+     */
+    @Override
+    public void sawOpcode(int seen) {
+        if (seen == Const.MONITORENTER) {
+            addSyncRegion();
+        } else if (OpcodeUtils.isStandardInvoke(seen) && isSynchronized(getPC())) {
+            processCall();
+        }
+    }
+
+    /**
+     * records the extent of a synchronized block from the monitor entry. The
+     * compiler guards the block with a catch all handler that releases the monitor,
+     * starting right after the entry, and that handler's ranges cover the whole
+     * block, including early returns.
+     */
+    private void addSyncRegion() {
+        CodeException[] exceptionTable = getCode().getExceptionTable();
+        if (exceptionTable == null) {
+            return;
+        }
+
+        int start = getNextPC();
+        int handlerPC = -1;
+        for (CodeException ce : exceptionTable) {
+            if ((ce.getCatchType() == 0) && (ce.getStartPC() == start)) {
+                handlerPC = ce.getHandlerPC();
+                break;
+            }
+        }
+
+        if (handlerPC < 0) {
+            return;
+        }
+
+        int end = start;
+        for (CodeException ce : exceptionTable) {
+            if ((ce.getCatchType() == 0) && (ce.getHandlerPC() == handlerPC) && (ce.getStartPC() < handlerPC)) {
+                end = Math.max(end, ce.getEndPC());
+            }
+        }
+        syncRegions.add(new SyncRegion(start, end));
+    }
+
+    private boolean isSynchronized(int pc) {
+        if (methodIsSynchronized) {
+            return true;
+        }
+
+        for (SyncRegion region : syncRegions) {
+            if (region.contains(pc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * reports calls to jdk methods that block, and calls to application methods
+     * that were found to block, in the first pass
+     */
+    private void processCall() {
+        String clsName = getClassConstantOperand();
+        if (clsName.startsWith(Values.SIG_ARRAY_PREFIX)) {
+            return;
+        }
+
+        String methodName = getNameConstantOperand();
+        int costClasses;
+        int priority;
+        if (clsName.startsWith(JDK_PACKAGE_PREFIX)) {
+            costClasses = CostUtils.getCallCost(clsName, methodName);
+            priority = NORMAL_PRIORITY;
+        } else {
+            costClasses = Statistics.getStatistics().getMethodCost(clsName, methodName, getSigConstantOperand());
+            priority = LOW_PRIORITY;
+        }
+
+        costClasses &= BLOCKING_COSTS;
+        if (costClasses != CostUtils.COST_NONE) {
+            bugReporter.reportBug(new BugInstance(this, BugType.VTP_BLOCKING_CALL_WHILE_SYNCHRONIZED.name(), priority)
+                    .addClass(this).addMethod(this).addSourceLine(this).addCalledMethod(this)
+                    .addString(CostUtils.describe(costClasses)));
+        }
+    }
+
+    /**
+     * holds the range of code in a synchronized block
+     */
+    static class SyncRegion {
+        final int startPC;
+        final int endPC;
+
+        SyncRegion(int start, int end) {
+            startPC = start;
+            endPC = end;
+        }
+
+        boolean contains(int pc) {
+            return (pc >= startPC) && (pc < endPC);
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
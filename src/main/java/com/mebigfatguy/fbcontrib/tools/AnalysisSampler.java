@@ -0,0 +1,411 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.mebigfatguy.fbcontrib.utils.ToString;
+import com.mebigfatguy.fbcontrib.utils.Values;
+
+/**
+ * a command line tool for running fb-contrib over a deterministic, seeded sample
+ * of a code base, for quick feedback lanes in CI, and then estimating the bug
+ * count of the whole code base from the sampled run.
+ * <p>
+ * The sampling unit is a top level class along with its inner classes. Each unit
+ * is given a weight, which is raised when the unit lives in a recently changed
+ * package, and for each method whose byte code length (the size measure that
+ * CollectStatistics records) makes it large. Units are then Poisson sampled with
+ * probabilities proportional to their weight, using a hash of the seed and the
+ * class name, so that the same seed always selects the same classes.
+ * </p>
+ * <p>
+ * The <em>sample</em> command writes a manifest of the selected classes and their
+ * inclusion probabilities, and prints the class list to pass to the SpotBugs
+ * -onlyAnalyze option. The <em>estimate</em> command reads that manifest along
+ * with the SpotBugs xml report of the sampled run, and prints a Horvitz-Thompson
+ * estimate of the total bug count, with 95% confidence bounds.
+ * </p>
+ */
+public final class AnalysisSampler {
+
+    private static final double DEFAULT_RATE = 0.10;
+    private static final long DEFAULT_SEED = 0L;
+    private static final double DEFAULT_CHANGED_WEIGHT = 4.0;
+    private static final double DEFAULT_LARGE_METHOD_WEIGHT = 1.0;
+    private static final int DEFAULT_LARGE_METHOD_BYTES = 1000;
+    private static final double Z_95 = 1.96;
+
+    private double rate = DEFAULT_RATE;
+    private long seed = DEFAULT_SEED;
+    private double changedWeight = DEFAULT_CHANGED_WEIGHT;
+    private double largeMethodWeight = DEFAULT_LARGE_METHOD_WEIGHT;
+    private int largeMethodBytes = DEFAULT_LARGE_METHOD_BYTES;
+    private final Set<String> changedPackages = new HashSet<>();
+    private final Map<String, SampleUnit> units = new TreeMap<>();
+
+    private AnalysisSampler() {
+    }
+
+    /**
+     * runs the sampler from the command line
+     *
+     * <pre>
+     * AnalysisSampler sample [-rate fraction] [-seed seed] [-changed pkg,pkg... | -changedFile file]
+     *                        [-changedWeight weight] [-largeMethodBytes bytes] [-largeMethodWeight weight]
+     *                        -manifest manifestFile classDirOrJar...
+     * AnalysisSampler estimate -manifest manifestFile report.xml
+     * </pre>
+     *
+     * @param args the command line arguments
+     * @throws Exception if the classes, manifest or report can not be read or
+     *                   written
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+        }
+
+        AnalysisSampler sampler = new AnalysisSampler();
+        Path manifest = null;
+        List<Path> inputs = new ArrayList<>();
+
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+            case "-rate":
+                sampler.rate = Double.parseDouble(args[++i]);
+                break;
+            case "-seed":
+                sampler.seed = Long.parseLong(args[++i]);
+                break;
+            case "-changed":
+                for (String pkg : args[++i].split(",")) {
+                    sampler.addChangedPackage(pkg);
+                }
+                break;
+            case "-changedFile":
+                for (String pkg : Files.readAllLines(Paths.get(args[++i]), StandardCharsets.UTF_8)) {
+                    sampler.addChangedPackage(pkg);
+                }
+                break;
+            case "-changedWeight":
+                sampler.changedWeight = Double.parseDouble(args[++i]);
+                break;
+            case "-largeMethodBytes":
+                sampler.largeMethodBytes = Integer.parseInt(args[++i]);
+                break;
+            case "-largeMethodWeight":
+                sampler.largeMethodWeight = Double.parseDouble(args[++i]);
+                break;
+            case "-manifest":
+                manifest = Paths.get(args[++i]);
+                break;
+            default:
+                inputs.add(Paths.get(args[i]));
+                break;
+            }
+        }
+
+        if ((manifest == null) || inputs.isEmpty()) {
+            usage();
+        }
+
+        if ("sample".equals(args[0])) {
+            for (Path input : inputs) {
+                sampler.addClasses(input);
+            }
+            List<String> selected = sampler.sample(manifest);
+            System.out.println(String.join(",", selected));
+        } else if ("estimate".equals(args[0])) {
+            sampler.estimate(manifest, inputs.get(0), System.out);
+        } else {
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: AnalysisSampler sample [-rate fraction] [-seed seed]");
+        System.err.println("       [-changed pkg,pkg... | -changedFile file] [-changedWeight weight]");
+        System.err.println("       [-largeMethodBytes bytes] [-largeMethodWeight weight]");
+        System.err.println("       -manifest manifestFile classDirOrJar...");
+        System.err.println("       AnalysisSampler estimate -manifest manifestFile report.xml");
+        System.exit(1);
+    }
+
+    private void addChangedPackage(String pkg) {
+        String trimmed = pkg.trim();
+        if (!trimmed.isEmpty()) {
+            changedPackages.add(trimmed.replace('/', '.'));
+        }
+    }
+
+    /**
+     * adds all the classes found in a class directory or jar file as candidates
+     * for sampling
+     *
+     * @param input the class directory or jar file
+     * @throws IOException if the classes can not be read
+     */
+    void addClasses(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> paths = Files.walk(input)) {
+                for (Path p : (Iterable<Path>) paths::iterator) {
+                    if (p.toString().endsWith(".class")) {
+                        try (InputStream is = Files.newInputStream(p)) {
+                            addClass(new ClassParser(is, p.toString()).parse());
+                        }
+                    }
+                }
+            }
+        } else {
+            try (ZipFile zf = new ZipFile(input.toFile())) {
+                for (ZipEntry ze : Collections.list(zf.entries())) {
+                    if (ze.getName().endsWith(".class")) {
+                        try (InputStream is = zf.getInputStream(ze)) {
+                            addClass(new ClassParser(is, ze.getName()).parse());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addClass(JavaClass cls) {
+        String clsName = cls.getClassName();
+        String unitName = getUnitName(clsName);
+
+        SampleUnit unit = units.get(unitName);
+        if (unit == null) {
+            unit = new SampleUnit();
+            units.put(unitName, unit);
+        }
+        unit.classes.add(clsName);
+
+        for (Method m : cls.getMethods()) {
+            Code code = m.getCode();
+            if ((code != null) && (code.getCode().length >= largeMethodBytes)) {
+                unit.largeMethods++;
+            }
+        }
+    }
+
+    /**
+     * selects the sample, writes the manifest, and returns the names of the
+     * selected classes
+     *
+     * @param manifest the file to write the selected classes and their inclusion
+     *                 probabilities to
+     * @return the names of the selected classes
+     * @throws IOException if the manifest can not be written
+     */
+    List<String> sample(Path manifest) throws IOException {
+        double totalWeight = 0.0;
+        for (Map.Entry<String, SampleUnit> entry : units.entrySet()) {
+            totalWeight += weigh(entry.getKey(), entry.getValue());
+        }
+
+        List<String> selected = new ArrayList<>();
+        double expectedSize = rate * units.size();
+        try (BufferedWriter bw = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, SampleUnit> entry : units.entrySet()) {
+                SampleUnit unit = entry.getValue();
+                double probability = Math.min(1.0, (expectedSize * unit.weight) / totalWeight);
+                if (draw(entry.getKey()) < probability) {
+                    for (String clsName : unit.classes) {
+                        bw.write(clsName);
+                        bw.write('\t');
+                        bw.write(Double.toString(probability));
+                        bw.newLine();
+                        selected.add(clsName);
+                    }
+                }
+            }
+        }
+
+        return selected;
+    }
+
+    private double weigh(String unitName, SampleUnit unit) {
+        double weight = 1.0 + (unit.largeMethods * largeMethodWeight);
+        int pkgPos = unitName.lastIndexOf('.');
+        String pkg = (pkgPos >= 0) ? unitName.substring(0, pkgPos) : "";
+        if (changedPackages.contains(pkg)) {
+            weight *= changedWeight;
+        }
+        unit.weight = weight;
+        return weight;
+    }
+
+    /**
+     * returns a uniformly distributed value in [0, 1) that only depends on the
+     * seed and the unit name, so that samples are reproducible
+     *
+     * @param unitName the top level class name of the sampling unit
+     * @return the pseudo random draw for this unit
+     */
+    private double draw(String unitName) {
+        long h = seed ^ 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < unitName.length(); i++) {
+            h = (h ^ unitName.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * estimates the total number of bugs in the whole code base from the bugs
+     * found in the sample. The bugs are totaled per sampling unit before they are
+     * weighed, as the unit, not the class, is what was drawn, and so the variance
+     * has to be summed over units.
+     *
+     * @param manifest the manifest written when the sample was taken
+     * @param report   the SpotBugs xml report of the sampled run
+     * @param out      the stream to write the estimate to
+     * @throws IOException if the manifest or report can not be read
+     */
+    void estimate(Path manifest, Path report, PrintStream out) throws IOException {
+        int sampledClasses = 0;
+        Map<String, Double> probabilities = new HashMap<>();
+        try (BufferedReader br = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int tabPos = line.indexOf('\t');
+                if (tabPos > 0) {
+                    sampledClasses++;
+                    probabilities.put(getUnitName(line.substring(0, tabPos)),
+                            Double.valueOf(line.substring(tabPos + 1)));
+                }
+            }
+        }
+
+        Map<String, Integer> bugCounts = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : countBugsByClass(report).entrySet()) {
+            String unitName = getUnitName(entry.getKey());
+            if (probabilities.containsKey(unitName)) {
+                Integer count = bugCounts.get(unitName);
+                bugCounts.put(unitName, Integer.valueOf(
+                        ((count == null) ? 0 : count.intValue()) + entry.getValue().intValue()));
+            }
+        }
+
+        int observed = 0;
+        double total = 0.0;
+        double variance = 0.0;
+        for (Map.Entry<String, Integer> entry : bugCounts.entrySet()) {
+            double p = probabilities.get(entry.getKey()).doubleValue();
+            int y = entry.getValue().intValue();
+            observed += y;
+            total += y / p;
+            variance += ((1.0 - p) * y * y) / (p * p);
+        }
+
+        double margin = Z_95 * Math.sqrt(variance);
+        out.println(String.format(Locale.ENGLISH, "Sampled classes: %d", Integer.valueOf(sampledClasses)));
+        out.println(String.format(Locale.ENGLISH, "Observed bugs: %d", Integer.valueOf(observed)));
+        out.println(String.format(Locale.ENGLISH, "Estimated total bugs: %.0f (95%% confidence: %.0f - %.0f)",
+                Double.valueOf(total), Double.valueOf(Math.max(observed, total - margin)),
+                Double.valueOf(total + margin)));
+    }
+
+    /**
+     * returns the name of the sampling unit a class belongs to, which is its top
+     * level class
+     *
+     * @param clsName the dotted class name
+     * @return the top level class name
+     */
+    private static String getUnitName(String clsName) {
+        int innerPos = clsName.indexOf(Values.INNER_CLASS_SEPARATOR);
+        return (innerPos >= 0) ? clsName.substring(0, innerPos) : clsName;
+    }
+
+    private static Map<String, Integer> countBugsByClass(Path report) throws IOException {
+        Document doc;
+        try (InputStream is = Files.newInputStream(report)) {
+            doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(is);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException(String.format(Locale.ENGLISH, "Failed parsing report %s", report), e);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        NodeList bugs = doc.getElementsByTagName("BugInstance");
+        for (int i = 0; i < bugs.getLength(); i++) {
+            NodeList children = bugs.item(i).getChildNodes();
+            for (int c = 0; c < children.getLength(); c++) {
+                Node child = children.item(c);
+                if ((child instanceof Element) && "Class".equals(child.getNodeName())) {
+                    String clsName = ((Element) child).getAttribute("classname");
+                    Integer count = counts.get(clsName);
+                    counts.put(clsName, Integer.valueOf((count == null) ? 1 : count.intValue() + 1));
+                    break;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * a top level class, along with its inner classes, that is sampled as a whole
+     */
+    static class SampleUnit {
+        List<String> classes = new ArrayList<>();
+        int largeMethods;
+        double weight;
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
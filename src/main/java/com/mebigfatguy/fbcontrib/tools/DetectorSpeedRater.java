@@ -0,0 +1,403 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.mebigfatguy.fbcontrib.utils.ToString;
+
+/**
+ * a command line tool that derives the speed attribute of each fb-contrib
+ * detector from measurements, rather than from guesses. It reads one or more
+ * SpotBugs xml reports generated over a reference corpus (whose FindBugsProfile
+ * section records the time spent by each detector, and the number of classes it
+ * visited), computes the average cost per class for each detector, and then
+ * optionally rewrites the speed attributes in etc/findbugs.xml and the matching
+ * sentences in etc/messages.xml. It can also emit a 'fast profile', the set of
+ * detectors whose combined cost fits within a given time budget, in the form
+ * accepted by the SpotBugs -visitors option.
+ */
+public final class DetectorSpeedRater {
+
+    private static final String FBCONTRIB_PACKAGE = "com.mebigfatguy.fbcontrib.";
+
+    private static final Pattern DETECTOR_PATTERN = Pattern
+            .compile("(<Detector\\s+class=\"([^\"]+)\"[^>]*?speed=\")(fast|moderate|slow)(\")");
+    private static final Pattern COLLECTOR_PATTERN = Pattern
+            .compile("<Detector\\s+class=\"([^\"]+)\"[^>]*?reports=\"\"");
+    private static final Pattern COMMENT_PATTERN = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+    private static final Pattern SPEED_SENTENCE_PATTERN = Pattern
+            .compile("It is a (fast|moderately fast|slow) detector");
+
+    private static final long DEFAULT_FAST_MICROS = 100L;
+    private static final long DEFAULT_MODERATE_MICROS = 500L;
+
+    enum Speed {
+        FAST("fast", "fast"), MODERATE("moderate", "moderately fast"), SLOW("slow", "slow");
+
+        private final String attribute;
+        private final String description;
+
+        Speed(String attribute, String description) {
+            this.attribute = attribute;
+            this.description = description;
+        }
+
+        String getAttribute() {
+            return attribute;
+        }
+
+        String getDescription() {
+            return description;
+        }
+    }
+
+    private final Map<String, DetectorCost> costs = new LinkedHashMap<>();
+    private long fastMicros = DEFAULT_FAST_MICROS;
+    private long moderateMicros = DEFAULT_MODERATE_MICROS;
+    private int corpusClasses;
+
+    private DetectorSpeedRater() {
+    }
+
+    /**
+     * runs the rater from the command line
+     *
+     * <pre>
+     * DetectorSpeedRater [-fast micros] [-moderate micros] [-plugin findbugs.xml] [-messages messages.xml]
+     *                    [-update] [-budget millis] [-classes count] [-profile outputFile] report.xml...
+     * </pre>
+     *
+     * @param args the command line arguments
+     * @throws Exception if the reports or plugin descriptors can not be read or
+     *                   written
+     */
+    public static void main(String[] args) throws Exception {
+        DetectorSpeedRater rater = new DetectorSpeedRater();
+        Path pluginXml = Paths.get("etc", "findbugs.xml");
+        Path messagesXml = Paths.get("etc", "messages.xml");
+        boolean update = false;
+        long budgetMillis = -1L;
+        int targetClasses = -1;
+        Path profileFile = null;
+        List<Path> reports = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-fast":
+                rater.fastMicros = Long.parseLong(args[++i]);
+                break;
+            case "-moderate":
+                rater.moderateMicros = Long.parseLong(args[++i]);
+                break;
+            case "-plugin":
+                pluginXml = Paths.get(args[++i]);
+                break;
+            case "-messages":
+                messagesXml = Paths.get(args[++i]);
+                break;
+            case "-update":
+                update = true;
+                break;
+            case "-budget":
+                budgetMillis = Long.parseLong(args[++i]);
+                break;
+            case "-classes":
+                targetClasses = Integer.parseInt(args[++i]);
+                break;
+            case "-profile":
+                profileFile = Paths.get(args[++i]);
+                break;
+            default:
+                reports.add(Paths.get(args[i]));
+                break;
+            }
+        }
+
+        if (reports.isEmpty()) {
+            System.err.println("Usage: DetectorSpeedRater [-fast micros] [-moderate micros] [-plugin findbugs.xml]");
+            System.err.println("       [-messages messages.xml] [-update] [-budget millis] [-classes count]");
+            System.err.println("       [-profile outputFile] report.xml...");
+            System.exit(1);
+        }
+
+        for (Path report : reports) {
+            rater.addReport(report);
+        }
+
+        String plugin = new String(Files.readAllBytes(pluginXml), StandardCharsets.UTF_8);
+        rater.printRatings(plugin, System.out);
+
+        if (update) {
+            Files.write(pluginXml, rater.updatePluginDescriptor(plugin).getBytes(StandardCharsets.UTF_8));
+            String messages = new String(Files.readAllBytes(messagesXml), StandardCharsets.UTF_8);
+            Files.write(messagesXml, rater.updateMessages(messages).getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (budgetMillis >= 0) {
+            int classes = (targetClasses >= 0) ? targetClasses : rater.corpusClasses;
+            String visitors = String.join(",", rater.buildFastProfile(plugin, budgetMillis, classes));
+            if (profileFile == null) {
+                System.out.println(visitors);
+            } else {
+                Files.write(profileFile, visitors.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * accumulates the detector timings found in the FindBugsProfile section of a
+     * SpotBugs xml report
+     *
+     * @param report the SpotBugs xml report to read
+     * @throws IOException if the report can not be read or parsed
+     */
+    void addReport(Path report) throws IOException {
+        Document doc = parse(report.toFile());
+
+        NodeList summaries = doc.getElementsByTagName("FindBugsSummary");
+        if (summaries.getLength() > 0) {
+            String totalClasses = ((Element) summaries.item(0)).getAttribute("total_classes");
+            if (!totalClasses.isEmpty()) {
+                corpusClasses += Integer.parseInt(totalClasses);
+            }
+        }
+
+        NodeList profiles = doc.getElementsByTagName("ClassProfile");
+        for (int i = 0; i < profiles.getLength(); i++) {
+            Element profile = (Element) profiles.item(i);
+            String name = profile.getAttribute("name");
+            if (!name.startsWith(FBCONTRIB_PACKAGE)) {
+                continue;
+            }
+
+            DetectorCost cost = costs.get(name);
+            if (cost == null) {
+                cost = new DetectorCost();
+                costs.put(name, cost);
+            }
+            cost.totalMillis += Long.parseLong(profile.getAttribute("totalMilliseconds"));
+            cost.invocations += Long.parseLong(profile.getAttribute("invocations"));
+        }
+    }
+
+    /**
+     * writes a table of the measured cost and derived speed of each detector
+     *
+     * @param plugin the text of findbugs.xml
+     * @param out    the stream to write the table to
+     */
+    void printRatings(String plugin, PrintStream out) {
+        Matcher m = DETECTOR_PATTERN.matcher(stripComments(plugin));
+        out.println(String.format("%-70s %12s %-9s %-9s", "Detector", "us/class", "Current", "Measured"));
+        while (m.find()) {
+            String detector = m.group(2);
+            DetectorCost cost = costs.get(detector);
+            if (cost == null) {
+                out.println(String.format("%-70s %12s %-9s %-9s", detector, "-", m.group(3), "-"));
+            } else {
+                out.println(String.format("%-70s %12d %-9s %-9s", detector, Long.valueOf(cost.getMicrosPerClass()),
+                        m.group(3), rate(cost).getAttribute()));
+            }
+        }
+    }
+
+    /**
+     * replaces the speed attribute of each measured detector in findbugs.xml,
+     * leaving unmeasured detectors alone
+     *
+     * @param plugin the text of findbugs.xml
+     * @return the updated text of findbugs.xml
+     */
+    String updatePluginDescriptor(String plugin) {
+        Matcher m = DETECTOR_PATTERN.matcher(plugin);
+        StringBuffer sb = new StringBuffer(plugin.length());
+        while (m.find()) {
+            DetectorCost cost = costs.get(m.group(2));
+            String speed = (cost == null) ? m.group(3) : rate(cost).getAttribute();
+            m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + speed + m.group(4)));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * replaces the 'It is a ... detector' sentence in the details of each
+     * measured detector in messages.xml
+     *
+     * @param messages the text of messages.xml
+     * @return the updated text of messages.xml
+     */
+    String updateMessages(String messages) {
+        String result = messages;
+        for (Map.Entry<String, DetectorCost> entry : costs.entrySet()) {
+            String start = "<Detector class=\"" + entry.getKey() + "\">";
+            int startPos = result.indexOf(start);
+            if (startPos < 0) {
+                continue;
+            }
+            int endPos = result.indexOf("</Detector>", startPos);
+            if (endPos < 0) {
+                continue;
+            }
+
+            String block = result.substring(startPos, endPos);
+            Matcher m = SPEED_SENTENCE_PATTERN.matcher(block);
+            if (m.find()) {
+                String newBlock = block.substring(0, m.start(1)) + rate(entry.getValue()).getDescription()
+                        + block.substring(m.end(1));
+                result = result.substring(0, startPos) + newBlock + result.substring(endPos);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * builds the list of detectors that can run within the given budget over a
+     * code base of the given size, cheapest first. First pass collection detectors
+     * are always included, and charged against the budget, as the other detectors
+     * depend on them.
+     *
+     * @param plugin       the text of findbugs.xml
+     * @param budgetMillis the time budget available for fb-contrib
+     * @param classes      the number of classes in the code base to be analyzed
+     * @return the simple names of the detectors that fit in the budget
+     */
+    List<String> buildFastProfile(String plugin, long budgetMillis, int classes) {
+        String activePlugin = stripComments(plugin);
+        List<String> collectors = new ArrayList<>();
+        Matcher cm = COLLECTOR_PATTERN.matcher(activePlugin);
+        while (cm.find()) {
+            collectors.add(cm.group(1));
+        }
+
+        List<String> candidates = new ArrayList<>();
+        Matcher dm = DETECTOR_PATTERN.matcher(activePlugin);
+        while (dm.find()) {
+            String detector = dm.group(2);
+            if (!collectors.contains(detector) && costs.containsKey(detector)) {
+                candidates.add(detector);
+            }
+        }
+        Collections.sort(candidates, new Comparator<String>() {
+            @Override
+            public int compare(String d1, String d2) {
+                return Long.compare(costs.get(d1).getMicrosPerClass(), costs.get(d2).getMicrosPerClass());
+            }
+        });
+
+        long budgetMicros = budgetMillis * 1000L;
+        long spentMicros = 0L;
+        List<String> profile = new ArrayList<>();
+        for (String detector : collectors) {
+            DetectorCost cost = costs.get(detector);
+            if (cost != null) {
+                spentMicros += cost.getMicrosPerClass() * classes;
+            }
+            profile.add(simpleName(detector));
+        }
+
+        for (String detector : candidates) {
+            long detectorMicros = costs.get(detector).getMicrosPerClass() * classes;
+            if ((spentMicros + detectorMicros) > budgetMicros) {
+                break;
+            }
+            spentMicros += detectorMicros;
+            profile.add(simpleName(detector));
+        }
+
+        return profile;
+    }
+
+    private Speed rate(DetectorCost cost) {
+        long micros = cost.getMicrosPerClass();
+        if (micros <= fastMicros) {
+            return Speed.FAST;
+        }
+        if (micros <= moderateMicros) {
+            return Speed.MODERATE;
+        }
+        return Speed.SLOW;
+    }
+
+    private static String stripComments(String plugin) {
+        return COMMENT_PATTERN.matcher(plugin).replaceAll("");
+    }
+
+    private static String simpleName(String detector) {
+        return detector.substring(detector.lastIndexOf('.') + 1);
+    }
+
+    private static Document parse(File f) throws IOException {
+        try (InputStream is = Files.newInputStream(f.toPath())) {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(false);
+            DocumentBuilder db = dbf.newDocumentBuilder();
+            return db.parse(is);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException(String.format(Locale.ENGLISH, "Failed parsing report %s", f), e);
+        }
+    }
+
+    /**
+     * the accumulated time a detector has spent, and the number of classes it has
+     * visited, across all reports
+     */
+    static class DetectorCost {
+        long totalMillis;
+        long invocations;
+
+        long getMicrosPerClass() {
+            if (invocations == 0) {
+                return 0L;
+            }
+            return (totalMillis * 1000L) / invocations;
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
@@ -18,7 +18,12 @@
  */
 package com.mebigfatguy.fbcontrib.utils;
 
+import javax.annotation.Nullable;
+
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.BootstrapMethods;
 import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.LineNumber;
 import org.apache.bcel.classfile.LineNumberTable;
 
@@ -73,4 +78,22 @@ public final class AttributesUtils {
 
         return true;
     }
+
+    /**
+     * returns the bootstrap methods attribute of a class, which holds the
+     * bootstrap methods used by its invokedynamic instructions
+     *
+     * @param clz the class to find the attribute in
+     * @return the bootstrap methods attribute, or null if the class has none
+     */
+    @Nullable
+    public static BootstrapMethods getBootstrapAttribute(JavaClass clz) {
+        for (Attribute att : clz.getAttributes()) {
+            if (att instanceof BootstrapMethods) {
+                return (BootstrapMethods) att;
+            }
+        }
+
+        return null;
+    }
 }
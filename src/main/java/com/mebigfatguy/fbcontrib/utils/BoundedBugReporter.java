@@ -0,0 +1,165 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.DelegatingBugReporter;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+/**
+ * a bug reporter that sits between a high volume detector and the real bug
+ * reporter, passing bugs straight through, but dropping findings that are
+ * identical to one already reported for the class, and limiting how many
+ * findings of a bug pattern are reported for any one class, and for the whole
+ * project. Counts and finding keys are held by class name, rather than for the
+ * last class seen, as detectors that report from their report method, walking
+ * the collected statistics, report the findings of classes interleaved.
+ * Findings dropped by the per class limit don't count against the per pattern
+ * limit. The detector calls reportSuppressedBugs when the analysis finishes,
+ * which logs, as information rather than as an analysis error, how many
+ * findings of each pattern were suppressed, so that it is clear the report is
+ * truncated.
+ * <p>
+ * The limits can be set with the system properties fb-contrib.emit.maxperclass
+ * and fb-contrib.emit.maxperpattern, where a value of 0 or less disables that
+ * limit.
+ * </p>
+ */
+public class BoundedBugReporter extends DelegatingBugReporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoundedBugReporter.class);
+
+    public static final String MAX_PER_CLASS_PROPERTY = "fb-contrib.emit.maxperclass";
+    public static final String MAX_PER_PATTERN_PROPERTY = "fb-contrib.emit.maxperpattern";
+
+    private static final int DEFAULT_MAX_PER_CLASS = 100;
+    private static final int DEFAULT_MAX_PER_PATTERN = 10000;
+
+    private final int maxPerClass;
+    private final int maxPerPattern;
+    private final Map<String, Integer> patternCounts = new HashMap<>();
+    private final Map<String, Integer> classPatternCounts = new HashMap<>();
+    private final Map<String, Integer> suppressedCounts = new TreeMap<>();
+    private final Set<String> reportedKeys = new HashSet<>();
+
+    /**
+     * constructs a BoundedBugReporter with the limits specified by system
+     * properties
+     *
+     * @param delegate the bug reporter that accepted bugs are passed on to
+     */
+    public BoundedBugReporter(BugReporter delegate) {
+        this(delegate, Integer.getInteger(MAX_PER_CLASS_PROPERTY, DEFAULT_MAX_PER_CLASS).intValue(),
+                Integer.getInteger(MAX_PER_PATTERN_PROPERTY, DEFAULT_MAX_PER_PATTERN).intValue());
+    }
+
+    /**
+     * constructs a BoundedBugReporter with explicit limits
+     *
+     * @param delegate      the bug reporter that accepted bugs are passed on to
+     * @param maxPerClass   the most findings of one bug pattern reported for a
+     *                      class, or 0 for no limit
+     * @param maxPerPattern the most findings of one bug pattern reported overall,
+     *                      or 0 for no limit
+     */
+    public BoundedBugReporter(BugReporter delegate, int maxPerClass, int maxPerPattern) {
+        super(delegate);
+        this.maxPerClass = maxPerClass;
+        this.maxPerPattern = maxPerPattern;
+    }
+
+    /**
+     * passes the bug on to the delegate, unless it is a duplicate, or a limit has
+     * already been reached
+     *
+     * @param bugInstance the bug to report
+     */
+    @Override
+    public synchronized void reportBug(BugInstance bugInstance) {
+        ClassAnnotation ca = bugInstance.getPrimaryClass();
+        String clsName = (ca == null) ? "" : ca.getClassName();
+
+        SourceLineAnnotation sla = bugInstance.getPrimarySourceLineAnnotation();
+        String key = clsName + '#' + bugInstance.getInstanceKey() + ':' + ((sla == null) ? -1 : sla.getStartLine());
+        if (!reportedKeys.add(key)) {
+            return;
+        }
+
+        String pattern = bugInstance.getType();
+        if (isOverLimit(increment(classPatternCounts, clsName + '#' + pattern), maxPerClass)
+                || isOverLimit(increment(patternCounts, pattern), maxPerPattern)) {
+            increment(suppressedCounts, pattern);
+            return;
+        }
+
+        getDelegate().reportBug(bugInstance);
+    }
+
+    /**
+     * logs, at info level, how many findings of each bug pattern were suppressed
+     * by the limits, and resets those totals. This is called from the report
+     * method of the detector, once the analysis has finished.
+     */
+    public synchronized void reportSuppressedBugs() {
+        for (Map.Entry<String, Integer> entry : suppressedCounts.entrySet()) {
+            LOG.info("fb-contrib: suppressed {} {} findings over the limits of {} per class and {} per pattern",
+                    entry.getValue(), entry.getKey(), Integer.valueOf(maxPerClass), Integer.valueOf(maxPerPattern));
+        }
+        suppressedCounts.clear();
+    }
+
+    /**
+     * returns the number of findings of a bug pattern that have been suppressed
+     * by the limits, since the totals were last reported
+     *
+     * @param pattern the bug pattern
+     * @return the number of suppressed findings
+     */
+    public synchronized int getSuppressedCount(String pattern) {
+        Integer count = suppressedCounts.get(pattern);
+        return (count == null) ? 0 : count.intValue();
+    }
+
+    private static int increment(Map<String, Integer> counts, String pattern) {
+        Integer count = counts.get(pattern);
+        int newCount = (count == null) ? 1 : count.intValue() + 1;
+        counts.put(pattern, Integer.valueOf(newCount));
+        return newCount;
+    }
+
+    private static boolean isOverLimit(int count, int limit) {
+        return (limit > 0) && (count > limit);
+    }
+
+    @Override
+    public String toString() {
+        return ToString.build(this);
+    }
+}
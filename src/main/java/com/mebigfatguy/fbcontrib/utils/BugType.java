@@ -36,11 +36,13 @@ public enum BugType {
     BAS_BLOATED_ASSIGNMENT_SCOPE,
     BED_BOGUS_EXCEPTION_DECLARATION,
     BED_HIERARCHICAL_EXCEPTION_DECLARATION,
+    BICP_BLOCKING_IN_COMMON_POOL,
     BL_BURYING_LOGIC,
     BRPI_BACKPORT_REUSE_PUBLIC_IDENTIFIERS,
     BSB_BLOATED_SYNCHRONIZED_BLOCK,
 
     CAAL_CONFUSING_ARRAY_AS_LIST,
+    CAC_CONTENDED_ATOMIC_COUNTER,
     CAO_CONFUSING_AUTOBOXED_OVERLOADING,
     CBC_CONTAINS_BASED_CONDITIONAL,
     CBX_CUSTOM_BUILT_XML,
@@ -52,6 +54,8 @@ public enum BugType {
     CFS_CONFUSING_FUNCTION_SEMANTICS,
     CHTH_COMMONS_HASHCODE_BUILDER_TOHASHCODE,
     CLI_CONSTANT_LIST_INDEX,
+    CLIL_CAPTURING_LAMBDA_IN_LOOP,
+    CMCL_COSTLY_METHOD_CALL_IN_LOOP,
     CNC_COLLECTION_NAMING_CONFUSION,
     COM_COPIED_OVERRIDDEN_METHOD,
     COM_PARENT_DELEGATED_CALL,
@@ -75,10 +79,13 @@ public enum BugType {
     DTEP_DEPRECATED_TYPESAFE_ENUM_PATTERN,
     DWI_DELETING_WHILE_ITERATING,
     DWI_MODIFYING_WHILE_ITERATING,
+    ECFL_EXPECTED_EXCEPTION_CAUGHT_IN_LOOP,
+    ECFL_THROW_CAUGHT_IN_SAME_LOOP,
 
     ENMI_EQUALS_ON_ENUM,
     ENMI_NULL_ENUM_VALUE,
     ENMI_ONE_ENUM_VALUE,
+    ENMI_REPEATED_VALUES_CALL,
     EXS_EXCEPTION_SOFTENING_HAS_CHECKED,
     EXS_EXCEPTION_SOFTENING_NO_CHECKED,
     EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS,
@@ -93,6 +100,7 @@ public enum BugType {
     FII_USE_FIND_FIRST,
     FII_USE_FUNCTION_IDENTITY,
     FII_USE_METHOD_REFERENCE,
+    FII_USE_PRIMITIVE_STREAM,
     FP_FINAL_PARAMETERS,
     FPL_FLOATING_POINT_LOOPS,
 
@@ -101,6 +109,8 @@ public enum BugType {
     HES_EXECUTOR_NEVER_SHUTDOWN,
     HES_EXECUTOR_OVERWRITTEN_WITHOUT_SHUTDOWN,
     HES_LOCAL_EXECUTOR_SERVICE,
+    HOPC_SHAREABLE_OBJECT_CREATED_PER_CALL,
+    HOPC_THREAD_CONFINED_OBJECT_CREATED_PER_CALL,
 
     ICA_INVALID_CONSTANT_ARGUMENT,
     IICU_INCORRECT_INTERNAL_CLASS_USE,
@@ -119,6 +129,8 @@ public enum BugType {
     IMC_IMMATURE_CLASS_VAR_NAME,
     IOI_COPY_WITH_READER,
     IOI_DOUBLE_BUFFER_COPY,
+    IOI_UNBUFFERED_READER_LOOP,
+    IOI_UNBUFFERED_SINGLE_BYTE_IO,
     IOI_UNENDED_ZLIB_OBJECT,
     IOI_USE_OF_FILE_STREAM_CONSTRUCTORS,
     IPU_IMPROPER_PROPERTIES_USE,
@@ -146,6 +158,7 @@ public enum BugType {
     LGO_LINGERING_GRAPHICS_OBJECT,
     LII_LIST_INDEXED_ITERATING,
     LO_APPENDED_STRING_IN_FORMAT_STRING,
+    LO_EAGER_LOG_ARGUMENT_EVALUATION,
     LO_EMBEDDED_SIMPLE_STRING_FORMAT_IN_FORMAT_STRING,
     LO_EXCEPTION_WITH_LOGGER_PARMS,
     LO_INCORRECT_NUMBER_OF_ANCHOR_PARAMETERS,
@@ -158,6 +171,7 @@ public enum BugType {
     LO_SUSPECT_LOG_PARAMETER,
     LO_TOSTRING_PARAMETER,
     LSC_LITERAL_STRING_COMPARISON,
+    LSIL_LINEAR_SEARCH_IN_LOOP,
     LSYC_LOCAL_SYNCHRONIZED_COLLECTION,
     LUI_USE_COLLECTION_ADD,
     LUI_USE_GET0,
@@ -185,6 +199,7 @@ public enum BugType {
     MUI_CALLING_SIZE_ON_SUBCONTAINER,
     MUI_CONTAINSKEY_BEFORE_GET,
     MUI_GET_BEFORE_REMOVE,
+    MUI_LOOKUP_BEFORE_PUT,
     MUI_NULL_CHECK_ON_MAP_SUBSET_ACCESSOR,
     MUI_USE_CONTAINSKEY,
 
@@ -233,7 +248,13 @@ public enum BugType {
     PUS_POSSIBLE_UNSUSPECTED_SERIALIZATION,
 
     RFI_SET_ACCESSIBLE,
+    RFI_UNCACHED_REFLECTIVE_LOOKUP,
+    RLIL_LOCK_IN_LOOP,
+    RLIL_SYNCHRONIZED_BLOCK_IN_LOOP,
+    RLIL_SYNCHRONIZED_COLLECTION_IN_LOOP,
     ROOM_REFLECTION_ON_OBJECT_METHODS,
+    RRC_PATTERN_COMPILED_IN_METHOD,
+    RRC_REGEX_RECOMPILED_BY_STRING_METHOD,
 
     S508C_APPENDED_STRING,
     S508C_NON_ACCESSIBLE_JCOMPONENT,
@@ -306,6 +327,10 @@ public enum BugType {
     SWCO_SUSPICIOUS_WAIT_ON_CONCURRENT_OBJECT,
 
     TBP_TRISTATE_BOOLEAN_PATTERN,
+    TPI_EXECUTOR_CREATED_PER_CALL,
+    TPI_THREAD_CREATED_PER_CALL,
+    TPI_UNBOUNDED_CACHED_THREAD_POOL,
+    TPI_UNBOUNDED_WORK_QUEUE,
     TR_TAIL_RECURSION,
 
     UAA_USE_ADD_ALL,
@@ -313,7 +338,10 @@ public enum BugType {
     UAC_UNNECESSARY_API_CONVERSION_FILE_TO_PATH,
     UCC_UNRELATED_COLLECTION_CONTENTS,
     UCPM_USE_CHARACTER_PARAMETERIZED_METHOD,
+    UDW_UNBATCHED_STATEMENT_UPDATE,
+    UDW_UNFLUSHED_JPA_WRITES_IN_LOOP,
     UEC_USE_ENUM_COLLECTIONS,
+    UFG_UNBOUNDED_FIELD_GROWTH,
     UJM_UNJITABLE_METHOD,
     UMTP_UNBOUND_METHOD_TEMPLATE_PARAMETER,
     UNNC_UNNECESSARY_NEW_NULL_CHECK,
@@ -349,6 +377,8 @@ public enum BugType {
     UVA_USE_VAR_ARGS,
     UTWR_USE_TRY_WITH_RESOURCES,
 
+    VTP_BLOCKING_CALL_WHILE_SYNCHRONIZED,
+
     WEM_OBSCURING_EXCEPTION,
     WEM_WEAK_EXCEPTION_MESSAGING,
     WI_DUPLICATE_WIRED_TYPES,
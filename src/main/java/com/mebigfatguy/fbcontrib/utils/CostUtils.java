@@ -0,0 +1,304 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+
+/**
+ * a collection of static methods for classifying jdk calls by the kind of
+ * expensive work they do, such as i/o, reflection, regular expression
+ * compilation, heavyweight allocation, lock acquisition or blocking waits. The
+ * cost classes are bit flags, so that a method that does several kinds of work
+ * can have them combined. The heavyweight allocation catalog also records
+ * whether each object is safe to share between threads, and can be extended
+ * with the fb-contrib.hopc.types and fb-contrib.hopc.catalog system properties,
+ * described on HeavyweightObjectPerCall.
+ */
+public final class CostUtils {
+
+    public static final int COST_NONE = 0;
+    public static final int COST_IO = 1;
+    public static final int COST_REFLECTION = 2;
+    public static final int COST_REGEX = 4;
+    public static final int COST_HEAVY_ALLOCATION = 8;
+    public static final int COST_LOCK = 16;
+    public static final int COST_BLOCKING = 32;
+
+    private static final Set<String> FILE_STREAM_CLASSES = UnmodifiableSet.create("java/io/FileInputStream",
+            "java/io/FileOutputStream", "java/io/FileReader", "java/io/FileWriter", "java/io/RandomAccessFile",
+            "java/net/Socket", "java/util/zip/ZipFile", "java/util/jar/JarFile");
+
+    private static final Set<String> FILE_METHODS = UnmodifiableSet.create("exists", "isFile", "isDirectory",
+            "length", "lastModified", "list", "listFiles", "delete", "mkdir", "mkdirs", "createNewFile", "renameTo",
+            "canRead", "canWrite", "getCanonicalPath", "getCanonicalFile");
+
+    private static final Set<String> NETWORK_METHODS = UnmodifiableSet.create("java/net/URL#openStream",
+            "java/net/URL#openConnection", "java/net/URLConnection#connect", "java/net/URLConnection#getInputStream",
+            "java/net/URLConnection#getOutputStream", "java/net/HttpURLConnection#getResponseCode",
+            "java/net/InetAddress#getByName", "java/net/InetAddress#getAllByName",
+            "java/net/InetAddress#getLocalHost", "java/net/http/HttpClient#send", "java/net/Socket#connect",
+            "java/net/ServerSocket#accept");
+
+    private static final Set<String> REFLECTION_METHODS = UnmodifiableSet.create("java/lang/Class#forName",
+            "java/lang/Class#getMethod", "java/lang/Class#getMethods", "java/lang/Class#getDeclaredMethod",
+            "java/lang/Class#getDeclaredMethods", "java/lang/Class#getField", "java/lang/Class#getFields",
+            "java/lang/Class#getDeclaredField", "java/lang/Class#getDeclaredFields",
+            "java/lang/Class#getConstructor", "java/lang/Class#getConstructors",
+            "java/lang/Class#getDeclaredConstructor", "java/lang/Class#getDeclaredConstructors",
+            "java/lang/Class#newInstance", "java/lang/reflect/Method#invoke",
+            "java/lang/reflect/Constructor#newInstance", "java/beans/Introspector#getBeanInfo");
+
+    private static final Set<String> REGEX_METHODS = UnmodifiableSet.create("java/util/regex/Pattern#compile",
+            "java/util/regex/Pattern#matches", "java/lang/String#matches", "java/lang/String#replaceAll",
+            "java/lang/String#replaceFirst");
+
+    private static final String HOPC_USER_TYPES = "fb-contrib.hopc.types";
+    private static final String HOPC_USER_CATALOG = "fb-contrib.hopc.catalog";
+
+    private static final String SHARED = "shared";
+    private static final String CONFINED = "confined";
+
+    /**
+     * maps class#method of the calls that create heavyweight objects to whether
+     * the object may be shared between threads
+     */
+    private static final Map<String, Boolean> HEAVYWEIGHT_CREATORS = new HashMap<>();
+
+    static {
+        HEAVYWEIGHT_CREATORS.put("javax/xml/bind/JAXBContext#newInstance", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("jakarta/xml/bind/JAXBContext#newInstance", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("com/fasterxml/jackson/databind/ObjectMapper#<init>", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("com/google/gson/Gson#<init>", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("com/google/gson/GsonBuilder#create", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("java/security/SecureRandom#<init>", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("java/net/http/HttpClient#newHttpClient", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("java/net/http/HttpClient$Builder#build", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("org/apache/http/impl/client/HttpClients#createDefault", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("org/apache/http/impl/client/HttpClients#createSystem", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("org/apache/http/impl/client/HttpClientBuilder#build", Boolean.TRUE);
+        HEAVYWEIGHT_CREATORS.put("okhttp3/OkHttpClient#<init>", Boolean.TRUE);
+
+        HEAVYWEIGHT_CREATORS.put("javax/xml/parsers/DocumentBuilderFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/xml/parsers/SAXParserFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/xml/transform/TransformerFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/xml/xpath/XPathFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/xml/stream/XMLInputFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/xml/stream/XMLOutputFactory#newInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("java/security/MessageDigest#getInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/crypto/Cipher#getInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("javax/crypto/Mac#getInstance", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("java/text/SimpleDateFormat#<init>", Boolean.FALSE);
+        HEAVYWEIGHT_CREATORS.put("java/text/DecimalFormat#<init>", Boolean.FALSE);
+
+        String userTypes = System.getProperty(HOPC_USER_TYPES);
+        if (userTypes != null) {
+            for (String entry : userTypes.trim().split(Values.WHITESPACE_COMMA_SPLIT)) {
+                int equalsPos = entry.indexOf('=');
+                if (equalsPos > 0) {
+                    addUserCreator(entry.substring(0, equalsPos).trim(), entry.substring(equalsPos + 1).trim());
+                }
+            }
+        }
+
+        String userCatalog = System.getProperty(HOPC_USER_CATALOG);
+        if (userCatalog != null) {
+            Properties catalog = new Properties();
+            try (InputStream is = Files.newInputStream(Paths.get(userCatalog))) {
+                catalog.load(is);
+                for (String creator : catalog.stringPropertyNames()) {
+                    addUserCreator(creator.trim(), catalog.getProperty(creator).trim());
+                }
+            } catch (IOException e) {
+                // an unreadable catalog leaves just the built-in and property entries
+            }
+        }
+    }
+
+    private static final Set<String> LOCK_METHODS = UnmodifiableSet.create(
+            "java/util/concurrent/locks/Lock#lock", "java/util/concurrent/locks/Lock#lockInterruptibly",
+            "java/util/concurrent/locks/ReentrantLock#lock",
+            "java/util/concurrent/locks/ReentrantLock#lockInterruptibly",
+            "java/util/concurrent/locks/ReentrantReadWriteLock$ReadLock#lock",
+            "java/util/concurrent/locks/ReentrantReadWriteLock$WriteLock#lock");
+
+    private static final Set<String> BLOCKING_METHODS = UnmodifiableSet.create("java/lang/Thread#sleep",
+            "java/lang/Thread#join", "java/lang/Object#wait", "java/util/concurrent/TimeUnit#sleep",
+            "java/util/concurrent/locks/LockSupport#park", "java/util/concurrent/locks/LockSupport#parkNanos",
+            "java/util/concurrent/Future#get", "java/util/concurrent/FutureTask#get",
+            "java/util/concurrent/CompletableFuture#get", "java/util/concurrent/CompletableFuture#join",
+            "java/util/concurrent/CountDownLatch#await", "java/util/concurrent/CyclicBarrier#await",
+            "java/util/concurrent/Semaphore#acquire", "java/util/concurrent/locks/Condition#await",
+            "java/util/concurrent/ExecutorService#awaitTermination", "java/util/concurrent/ExecutorService#invokeAll",
+            "java/util/concurrent/ExecutorService#invokeAny");
+
+    private static final Set<String> BLOCKING_QUEUE_CLASSES = UnmodifiableSet.create(
+            "java/util/concurrent/BlockingQueue", "java/util/concurrent/BlockingDeque",
+            "java/util/concurrent/ArrayBlockingQueue", "java/util/concurrent/LinkedBlockingQueue",
+            "java/util/concurrent/LinkedBlockingDeque", "java/util/concurrent/PriorityBlockingQueue",
+            "java/util/concurrent/SynchronousQueue", "java/util/concurrent/DelayQueue",
+            "java/util/concurrent/LinkedTransferQueue", "java/util/concurrent/TransferQueue");
+
+    private static final Set<String> BLOCKING_QUEUE_METHODS = UnmodifiableSet.create("take", "put", "takeFirst",
+            "takeLast", "putFirst", "putLast", "transfer");
+
+    /**
+     * private to reinforce the helper status of the class
+     */
+    private CostUtils() {
+    }
+
+    /**
+     * returns the cost classes of calling a jdk, or well known library, method
+     *
+     * @param clsName    the slashed name of the class that owns the method
+     * @param methodName the name of the method called
+     * @return the cost class flags of the call, or COST_NONE
+     */
+    public static int getCallCost(@SlashedClassName String clsName, String methodName) {
+        if (FILE_STREAM_CLASSES.contains(clsName)) {
+            return Values.CONSTRUCTOR.equals(methodName) ? COST_IO : COST_NONE;
+        }
+        if ("java/io/File".equals(clsName)) {
+            return FILE_METHODS.contains(methodName) ? COST_IO : COST_NONE;
+        }
+        if ("java/nio/file/Files".equals(clsName)) {
+            return COST_IO;
+        }
+        if (BLOCKING_QUEUE_CLASSES.contains(clsName)) {
+            return BLOCKING_QUEUE_METHODS.contains(methodName) ? COST_BLOCKING : COST_NONE;
+        }
+
+        String key = clsName + '#' + methodName;
+        if (NETWORK_METHODS.contains(key)) {
+            return COST_IO;
+        }
+        if (REFLECTION_METHODS.contains(key)) {
+            return COST_REFLECTION;
+        }
+        if (REGEX_METHODS.contains(key)) {
+            return COST_REGEX;
+        }
+        if (HEAVYWEIGHT_CREATORS.containsKey(key)) {
+            return COST_HEAVY_ALLOCATION;
+        }
+        if (LOCK_METHODS.contains(key)) {
+            return COST_LOCK;
+        }
+        if (BLOCKING_METHODS.contains(key)) {
+            return COST_BLOCKING;
+        }
+        return COST_NONE;
+    }
+
+    /**
+     * returns whether a call creates a heavyweight object, and if so, whether that
+     * object is safe to share between threads
+     *
+     * @param clsName    the slashed name of the class that owns the method
+     * @param methodName the name of the method called
+     * @return TRUE if the object may be shared, FALSE if it should be kept per
+     *         thread, or null if the call doesn't create a heavyweight object
+     */
+    @Nullable
+    public static Boolean getHeavyweightSharing(@SlashedClassName String clsName, String methodName) {
+        return HEAVYWEIGHT_CREATORS.get(clsName + '#' + methodName);
+    }
+
+    /**
+     * returns a weight for how expensive the most expensive of a set of cost
+     * classes is, from 0 for none, to 3 for i/o
+     *
+     * @param costClasses the cost class flags
+     * @return the weight
+     */
+    public static int getWeight(int costClasses) {
+        if ((costClasses & COST_IO) != 0) {
+            return 3;
+        }
+        if ((costClasses & (COST_REFLECTION | COST_HEAVY_ALLOCATION)) != 0) {
+            return 2;
+        }
+        if (costClasses != COST_NONE) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * returns a readable description of a set of cost classes
+     *
+     * @param costClasses the cost class flags
+     * @return a comma separated list of the cost class names
+     */
+    public static String describe(int costClasses) {
+        StringBuilder sb = new StringBuilder();
+        appendIf(sb, costClasses, COST_IO, "i/o");
+        appendIf(sb, costClasses, COST_REFLECTION, "reflection");
+        appendIf(sb, costClasses, COST_REGEX, "regex compilation");
+        appendIf(sb, costClasses, COST_HEAVY_ALLOCATION, "heavyweight allocation");
+        appendIf(sb, costClasses, COST_LOCK, "lock acquisition");
+        appendIf(sb, costClasses, COST_BLOCKING, "blocking wait");
+        return sb.toString();
+    }
+
+    /**
+     * adds a user supplied entry to the heavyweight catalog, ignoring malformed
+     * ones
+     *
+     * @param creator the dotted class name, optionally followed by # and the
+     *                factory method
+     * @param kind    shared or confined
+     */
+    private static void addUserCreator(String creator, String kind) {
+        Boolean isShared;
+        if (SHARED.equalsIgnoreCase(kind)) {
+            isShared = Boolean.TRUE;
+        } else if (CONFINED.equalsIgnoreCase(kind)) {
+            isShared = Boolean.FALSE;
+        } else {
+            return;
+        }
+
+        String key = creator.replace('.', '/');
+        if (key.indexOf('#') < 0) {
+            key += '#' + Values.CONSTRUCTOR;
+        }
+        HEAVYWEIGHT_CREATORS.put(key, isShared);
+    }
+
+    private static void appendIf(StringBuilder sb, int costClasses, int costClass, String name) {
+        if ((costClasses & costClass) != 0) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(name);
+        }
+    }
+}
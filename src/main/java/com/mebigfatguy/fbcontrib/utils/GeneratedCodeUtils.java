@@ -0,0 +1,200 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.bcel.classfile.AnnotationEntry;
+import org.apache.bcel.classfile.JavaClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.umd.cs.findbugs.Detector;
+
+/**
+ * a collection of static methods for recognizing classes that were generated
+ * by tools, such as protobuf, thrift, jaxb, antlr, jsp compilers, and annotation
+ * processors, and for letting detectors skip them. Only information already in
+ * the class file is used, no hierarchy lookups are done, so that the check is
+ * cheap enough to be done in every visitClassContext.
+ * <p>
+ * The detectors that skip generated classes can be set with the system property
+ * fb-contrib.generated.skip, as a comma separated list of detector simple class
+ * names, where an empty value disables skipping altogether.
+ * </p>
+ */
+public final class GeneratedCodeUtils {
+
+    public static final String SKIP_PROPERTY = "fb-contrib.generated.skip";
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeneratedCodeUtils.class);
+
+    private static final String DEFAULT_SKIPPING_DETECTORS = "FinalParameters,UnusedParameter,ImmatureClass,"
+            + "LoggerOddities";
+
+    private static final Set<String> SKIPPING_DETECTORS = UnmodifiableSet.create(
+            System.getProperty(SKIP_PROPERTY, DEFAULT_SKIPPING_DETECTORS).trim().split("\\s*,\\s*"));
+
+    private static final Set<String> GENERATED_ANNOTATIONS = UnmodifiableSet.create(
+            "Ljavax/xml/bind/annotation/XmlRegistry;",
+            "Ljakarta/xml/bind/annotation/XmlRegistry;");
+
+    private static final Set<String> GENERATED_SUPERCLASSES = UnmodifiableSet.create(
+            "com.google.protobuf.GeneratedMessage",
+            "com.google.protobuf.GeneratedMessage$Builder",
+            "com.google.protobuf.GeneratedMessageV3",
+            "com.google.protobuf.GeneratedMessageV3$Builder",
+            "com.google.protobuf.GeneratedMessageLite",
+            "com.google.protobuf.GeneratedMessageLite$Builder",
+            "org.apache.thrift.TUnion",
+            "org.apache.thrift.scheme.StandardScheme",
+            "org.apache.thrift.scheme.TupleScheme",
+            "org.antlr.v4.runtime.Parser",
+            "org.antlr.v4.runtime.Lexer",
+            "org.antlr.v4.runtime.ParserRuleContext",
+            "org.antlr.runtime.Parser",
+            "org.antlr.runtime.Lexer",
+            "org.apache.jasper.runtime.HttpJspBase");
+
+    private static final Set<String> GENERATED_INTERFACES = UnmodifiableSet.create(
+            "com.google.protobuf.MessageOrBuilder",
+            "com.google.protobuf.MessageLiteOrBuilder",
+            "com.google.protobuf.ProtocolMessageEnum",
+            "com.google.protobuf.Internal$EnumLite",
+            "org.apache.thrift.TBase",
+            "org.apache.thrift.TEnum",
+            "org.apache.thrift.TFieldIdEnum",
+            "org.antlr.v4.runtime.tree.ParseTreeListener",
+            "org.antlr.v4.runtime.tree.ParseTreeVisitor");
+
+    private static final Set<String> GENERATED_SOURCE_EXTENSIONS = UnmodifiableSet.create(".jsp", ".jspx",
+            ".tag", ".tagx");
+
+    private static final Set<String> GENERATED_NAME_PREFIXES = UnmodifiableSet.create("AutoValue_", "Dagger");
+
+    private static final Set<String> GENERATED_NAME_SUFFIXES = UnmodifiableSet.create("OuterClass", "Grpc",
+            "_jsp", "_Factory", "_MembersInjector", "_Impl");
+
+    private static final Set<String> skippedClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * private to reinforce the helper status of the class
+     */
+    private GeneratedCodeUtils() {
+    }
+
+    /**
+     * determines whether a class was generated by a tool, from its annotations,
+     * source file attribute, direct parents, or name
+     *
+     * @param cls the class to check
+     * @return if the class looks to be generated
+     */
+    public static boolean isGenerated(JavaClass cls) {
+        for (AnnotationEntry entry : cls.getAnnotationEntries()) {
+            String annotationType = entry.getAnnotationType();
+            if (GENERATED_ANNOTATIONS.contains(annotationType) || annotationType.endsWith("/Generated;")) {
+                return true;
+            }
+        }
+
+        String sourceFile = cls.getSourceFileName();
+        int dotPos = sourceFile.lastIndexOf('.');
+        if ((dotPos >= 0) && GENERATED_SOURCE_EXTENSIONS.contains(sourceFile.substring(dotPos))) {
+            return true;
+        }
+
+        if (GENERATED_SUPERCLASSES.contains(cls.getSuperclassName())) {
+            return true;
+        }
+
+        for (String infName : cls.getInterfaceNames()) {
+            if (GENERATED_INTERFACES.contains(infName)) {
+                return true;
+            }
+        }
+
+        return isGeneratedName(cls.getClassName());
+    }
+
+    /**
+     * determines whether a class name follows the naming pattern of a code
+     * generator, looking at the top level class, so that inner classes of
+     * generated classes are also found
+     *
+     * @param clsName the dotted class name
+     * @return if the name looks to be that of a generated class
+     */
+    public static boolean isGeneratedName(String clsName) {
+        if (clsName.contains("$$")) {
+            return true;
+        }
+
+        int innerPos = clsName.indexOf(Values.INNER_CLASS_SEPARATOR);
+        String topLevelName = (innerPos >= 0) ? clsName.substring(0, innerPos) : clsName;
+        String simpleName = topLevelName.substring(topLevelName.lastIndexOf('.') + 1);
+
+        for (String prefix : GENERATED_NAME_PREFIXES) {
+            if (simpleName.startsWith(prefix) && (simpleName.length() > prefix.length())
+                    && Character.isUpperCase(simpleName.charAt(prefix.length()))) {
+                return true;
+            }
+        }
+        for (String suffix : GENERATED_NAME_SUFFIXES) {
+            if (simpleName.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * determines whether a detector should skip this class, because the detector
+     * is configured to skip generated classes, and this class is one. Skipped
+     * classes are remembered so that they can be counted at the end of the run.
+     *
+     * @param detector the detector that is about to visit the class
+     * @param cls      the class to be visited
+     * @return if the detector should not look at this class
+     */
+    public static boolean shouldSkip(Detector detector, JavaClass cls) {
+        if (!SKIPPING_DETECTORS.contains(detector.getClass().getSimpleName()) || !isGenerated(cls)) {
+            return false;
+        }
+
+        skippedClasses.add(cls.getClassName());
+        return true;
+    }
+
+    /**
+     * logs, at info level, the number of generated classes that were skipped, if
+     * any were, and resets the count. This is called from the report method of the
+     * skipping detectors, and only the first to be called logs anything.
+     */
+    public static void reportSkippedClasses() {
+        int numSkipped = skippedClasses.size();
+        if (numSkipped > 0) {
+            skippedClasses.clear();
+            LOG.info("fb-contrib: skipped {} generated classes for detectors {}", Integer.valueOf(numSkipped),
+                    SKIPPING_DETECTORS);
+        }
+    }
+}
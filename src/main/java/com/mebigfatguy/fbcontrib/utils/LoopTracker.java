@@ -0,0 +1,185 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bcel.Const;
+
+import edu.umd.cs.findbugs.visitclass.DismantleBytecode;
+
+/**
+ * collects the loops of a method, found from its backward branches, along with
+ * where each register is stored to, so that a detector can ask whether an
+ * instruction is executed in a loop, and whether a register holds the same
+ * value on every iteration of it. Detectors feed it every opcode they see, and
+ * clear it at the start of each method.
+ */
+public class LoopTracker {
+
+    private final Map<Integer, Loop> loops = new HashMap<>();
+    private final Map<Integer, List<Integer>> registerStores = new HashMap<>();
+
+    /**
+     * forgets the loops and register stores of the previous method
+     */
+    public void clear() {
+        loops.clear();
+        registerStores.clear();
+    }
+
+    /**
+     * records the loop or register store made by the current instruction, if any
+     *
+     * @param dbc  the visitor parsing the method
+     * @param seen the opcode of the currently parsed instruction
+     * @return whether the instruction is the backward branch that closes a loop
+     */
+    public boolean sawOpcode(DismantleBytecode dbc, int seen) {
+        if (OpcodeUtils.isStore(seen) || (seen == Const.IINC)) {
+            Integer reg = Integer.valueOf(dbc.getRegisterOperand());
+            List<Integer> stores = registerStores.get(reg);
+            if (stores == null) {
+                stores = new ArrayList<>();
+                registerStores.put(reg, stores);
+            }
+            stores.add(Integer.valueOf(dbc.getPC()));
+        } else if (OpcodeUtils.isBranch(seen)) {
+            int branchTarget = dbc.getBranchTarget();
+            int pc = dbc.getPC();
+            if (branchTarget < pc) {
+                // continue statements branch back to the same start, so keep just the widest
+                Integer start = Integer.valueOf(branchTarget);
+                Loop loop = loops.get(start);
+                if ((loop == null) || !loop.isInLoop(pc)) {
+                    loops.put(start, new Loop(branchTarget, pc));
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns whether any loops have been found in the method
+     *
+     * @return if the method has no loops
+     */
+    public boolean isEmpty() {
+        return loops.isEmpty();
+    }
+
+    /**
+     * returns whether the instruction at a pc is inside of any loop
+     *
+     * @param pc the pc of the instruction
+     * @return if the instruction is in a loop
+     */
+    public boolean isInLoop(int pc) {
+        for (Loop loop : loops.values()) {
+            if (loop.isInLoop(pc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns how many loops an instruction is nested in
+     *
+     * @param pc the pc of the instruction
+     * @return the number of loops that hold the instruction
+     */
+    public int getLoopDepth(int pc) {
+        int depth = 0;
+        for (Loop loop : loops.values()) {
+            if (loop.isInLoop(pc)) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * returns all the loops that have been found in the method
+     *
+     * @return the loops of the method
+     */
+    public Collection<Loop> getLoops() {
+        return loops.values();
+    }
+
+    /**
+     * returns whether a register is stored to inside of a loop, and so may hold a
+     * different value on each iteration
+     *
+     * @param reg  the register to check
+     * @param loop the loop to look for stores in
+     * @return if the register is stored to in the loop
+     */
+    public boolean isStoredInLoop(int reg, Loop loop) {
+        List<Integer> stores = registerStores.get(Integer.valueOf(reg));
+        if (stores != null) {
+            for (Integer storePC : stores) {
+                if (loop.isInLoop(storePC.intValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return ToString.build(this);
+    }
+
+    /**
+     * holds the range of pcs of a loop, from the target of its backward branch to
+     * the branch itself
+     */
+    public static class Loop {
+        private final int startPC;
+        private final int endPC;
+
+        Loop(int start, int end) {
+            startPC = start;
+            endPC = end;
+        }
+
+        /**
+         * returns whether the instruction at a pc is inside of this loop
+         *
+         * @param pc the pc of the instruction
+         * @return if the instruction is in the loop
+         */
+        public boolean isInLoop(int pc) {
+            return (pc >= startPC) && (pc <= endPC);
+        }
+
+        @Override
+        public String toString() {
+            return ToString.build(this);
+        }
+    }
+}
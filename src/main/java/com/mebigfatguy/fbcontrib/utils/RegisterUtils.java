@@ -143,6 +143,25 @@ public final class RegisterUtils {
         return endRange;
     }
 
+    /**
+     * returns the name of the local variable held in a register at this pc, or a
+     * description of the register if the method has no local variable table
+     *
+     * @param lvt   the local variable table for this method
+     * @param reg   the register to examine
+     * @param curPC the pc of the current instruction
+     * @return the name of the local variable
+     */
+    public static String getLocalVariableName(LocalVariableTable lvt, int reg, int curPC) {
+        if (lvt != null) {
+            LocalVariable lv = lvt.getLocalVariable(reg, curPC);
+            if (lv != null) {
+                return lv.getName();
+            }
+        }
+        return "local variable " + reg;
+    }
+
     /**
      * gets the set of registers used for parameters
      *
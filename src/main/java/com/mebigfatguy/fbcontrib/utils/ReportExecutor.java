@@ -0,0 +1,119 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * a small, bounded thread pool, shared by all detectors, for splitting up the
+ * whole program work that is done in a detector's report method. Tasks are
+ * expected to only look at state the detector owns, and not the analysis
+ * cache or the bcel Repository, which are not thread safe. Results are
+ * returned in the order the items were given, so the caller reports bugs from
+ * its own thread, in a repeatable order.
+ * <p>
+ * The number of threads can be set with the system property
+ * fb-contrib.report.threads, where a value of 1 runs everything on the calling
+ * thread.
+ * </p>
+ */
+public final class ReportExecutor {
+
+    public static final String THREADS_PROPERTY = "fb-contrib.report.threads";
+
+    private static final int NUM_THREADS = Math.max(1,
+            Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()).intValue());
+
+    private static ExecutorService executor;
+
+    /**
+     * private to reinforce the helper status of the class
+     */
+    private ReportExecutor() {
+    }
+
+    /**
+     * applies a task to each item, using the shared pool when there is more than
+     * one item and more than one thread is allowed
+     *
+     * @param <T>   the type of the items to process
+     * @param <R>   the type of the result of each task
+     * @param items the items to process
+     * @param task  the work to do on each item
+     * @return the results of the task, in the same order as the items
+     */
+    public static <T, R> List<R> map(Collection<T> items, Function<T, R> task) {
+        List<R> results = new ArrayList<>(items.size());
+        if ((NUM_THREADS == 1) || (items.size() < 2)) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        ExecutorService service = getExecutor();
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(service.submit(() -> task.apply(item)));
+        }
+
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for report tasks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Report task failed", cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadNum = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+                Thread t = new Thread(r, "fb-contrib-report-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import java.util.Set;
+
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+
+/**
+ * a collection of static methods for recognizing calls into jdbc, jpa and
+ * spring jdbc that go to the database.
+ */
+public final class SQLUtils {
+
+    private static final Set<String> JDBC_CLASSES = UnmodifiableSet.create("java/sql/Statement",
+            "java/sql/PreparedStatement", "java/sql/CallableStatement");
+
+    private static final Set<String> JDBC_METHODS = UnmodifiableSet.create("execute", "executeQuery",
+            "executeUpdate", "executeLargeUpdate");
+
+    private static final Set<String> PREPARED_CLASSES = UnmodifiableSet.create("java/sql/PreparedStatement",
+            "java/sql/CallableStatement");
+
+    private static final Set<String> UPDATE_METHODS = UnmodifiableSet.create("executeUpdate", "executeLargeUpdate");
+
+    private static final Set<String> JPA_CLASSES = UnmodifiableSet.create("javax/persistence/EntityManager",
+            "jakarta/persistence/EntityManager");
+
+    private static final Set<String> JPA_METHODS = UnmodifiableSet.create("find", "createQuery",
+            "createNamedQuery", "createNativeQuery");
+
+    private static final Set<String> SPRING_CLASSES = UnmodifiableSet.create(
+            "org/springframework/jdbc/core/JdbcTemplate", "org/springframework/jdbc/core/JdbcOperations",
+            "org/springframework/jdbc/core/namedparam/NamedParameterJdbcTemplate",
+            "org/springframework/jdbc/core/namedparam/NamedParameterJdbcOperations");
+
+    private static final Set<String> SPRING_METHODS = UnmodifiableSet.create("execute", "query", "queryForObject",
+            "queryForList", "queryForMap", "queryForRowSet", "queryForStream", "update");
+
+    /**
+     * private to reinforce the helper status of the class
+     */
+    private SQLUtils() {
+    }
+
+    /**
+     * determines whether calling this method sends a statement to the database.
+     * Batch methods are not included, as they are the cure, not the problem.
+     *
+     * @param clsName    the slashed name of the class that owns the method
+     * @param methodName the name of the method called
+     * @return if the method runs a query or update
+     */
+    public static boolean isQueryMethod(@SlashedClassName String clsName, String methodName) {
+        if (JDBC_CLASSES.contains(clsName)) {
+            return JDBC_METHODS.contains(methodName);
+        }
+        if (JPA_CLASSES.contains(clsName)) {
+            return JPA_METHODS.contains(methodName);
+        }
+        if (SPRING_CLASSES.contains(clsName)) {
+            return SPRING_METHODS.contains(methodName);
+        }
+        return false;
+    }
+
+    /**
+     * determines whether calling this method executes an update on a prepared
+     * statement, which could instead be batched with addBatch and executeBatch.
+     *
+     * @param clsName    the slashed name of the class that owns the method
+     * @param methodName the name of the method called
+     * @return if the method is a prepared statement update
+     */
+    public static boolean isPreparedUpdateMethod(@SlashedClassName String clsName, String methodName) {
+        return PREPARED_CLASSES.contains(clsName) && UPDATE_METHODS.contains(methodName);
+    }
+}
@@ -0,0 +1,99 @@
+package ex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+public class BICP_Sample {
+
+    private final ExecutorService ioExecutor;
+    private final Connection conn;
+
+    public BICP_Sample(ExecutorService ioExecutor, Connection conn) {
+        this.ioExecutor = ioExecutor;
+        this.conn = conn;
+    }
+
+    public List<String> parallelRead(List<Path> paths) {
+        return paths.parallelStream().map(p -> read(p)).collect(Collectors.toList());
+    }
+
+    public List<List<String>> parallelMethodRef(List<Path> paths) {
+        return paths.stream().parallel().filter(p -> p != null).map(this::lines).collect(Collectors.toList());
+    }
+
+    public CompletableFuture<String> supplyAsync(long id) {
+        return CompletableFuture.supplyAsync(() -> lookupName(id));
+    }
+
+    public CompletableFuture<Void> thenAsync(CompletableFuture<String> f) {
+        return f.thenAcceptAsync(s -> sleepABit());
+    }
+
+    public void commonPool() {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.execute(() -> sleepABit());
+    }
+
+    public CompletableFuture<String> fpOwnExecutor(long id) {
+        return CompletableFuture.supplyAsync(() -> lookupName(id), ioExecutor);
+    }
+
+    public List<Integer> fpParallelCpu(List<String> words) {
+        return words.parallelStream().map(String::length).collect(Collectors.toList());
+    }
+
+    public List<String> fpSequential(List<Path> paths) {
+        return paths.parallelStream().sequential().map(p -> read(p)).collect(Collectors.toList());
+    }
+
+    public List<String> fpSerialRead(List<Path> paths) {
+        return paths.stream().map(p -> read(p)).collect(Collectors.toList());
+    }
+
+    public CompletableFuture<Integer> fpCpuAsync(String s) {
+        return CompletableFuture.supplyAsync(() -> s.hashCode());
+    }
+
+    private String read(Path p) {
+        try {
+            return new String(Files.readAllBytes(p));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<String> lines(Path p) {
+        return read(p).isEmpty() ? null : Collections.singletonList(read(p));
+    }
+
+    private String lookupName(long id) {
+        try (PreparedStatement ps = conn.prepareStatement("select name from users where id = ?")) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static void sleepABit() {
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
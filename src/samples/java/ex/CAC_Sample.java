@@ -0,0 +1,66 @@
+package ex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CAC_Sample {
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+    private final LongAdder adder = new LongAdder();
+
+    public void handle(byte[] data) {
+        REQUESTS.incrementAndGet();
+        bytes.addAndGet(data.length);
+        adder.increment();
+    }
+
+    public void error() {
+        errors.getAndIncrement();
+    }
+
+    public long getRequests() {
+        return REQUESTS.get();
+    }
+
+    public String report() {
+        return errors.get() + " errors, " + bytes.get() + " bytes";
+    }
+
+    public long fpNextId() {
+        return sequence.incrementAndGet();
+    }
+
+    public void fpEnter() {
+        inFlight.incrementAndGet();
+    }
+
+    public boolean fpReadInSameMethod() {
+        inFlight.decrementAndGet();
+        return inFlight.get() == 0;
+    }
+
+    public void fpCompareAndSet(long value) {
+        max.incrementAndGet();
+        long current = max.get();
+        while ((value > current) && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public void fpEscapes() {
+        passed.incrementAndGet();
+        record(passed);
+    }
+
+    private void record(AtomicLong counter) {
+        System.out.println(counter);
+    }
+}
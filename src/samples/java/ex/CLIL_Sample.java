@@ -0,0 +1,64 @@
+package ex;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+public class CLIL_Sample {
+
+    private final String prefix = "x";
+    private int threshold;
+
+    public void sortBuckets(List<List<String>> buckets, Map<String, Integer> weights) {
+        for (List<String> bucket : buckets) {
+            bucket.sort(Comparator.comparing(s -> weights.get(s)));
+        }
+    }
+
+    public int countMatches(List<List<String>> groups) {
+        int count = 0;
+        for (List<String> group : groups) {
+            count += group.stream().filter(s -> s.length() > threshold).count();
+        }
+        return count;
+    }
+
+    public void nestedCallbacks(List<List<String>> groups, StringBuilder sb) {
+        for (List<String> group : groups) {
+            for (String s : group) {
+                group.forEach(sb::append);
+            }
+        }
+    }
+
+    public int fpLoopVariable(List<List<String>> groups) {
+        int count = 0;
+        for (List<String> group : groups) {
+            String first = group.get(0);
+            count += group.stream().filter(s -> s.equals(first)).count();
+        }
+        return count;
+    }
+
+    public int fpNonCapturing(List<List<String>> groups) {
+        int count = 0;
+        for (List<String> group : groups) {
+            count += group.stream().filter(String::isEmpty).count();
+        }
+        return count;
+    }
+
+    public int fpHoisted(List<List<String>> groups, int min) {
+        Predicate<String> longEnough = s -> s.length() > min;
+        int count = 0;
+        for (List<String> group : groups) {
+            count += group.stream().filter(longEnough).count();
+        }
+        return count;
+    }
+
+    public int fpNotInLoop(List<String> group, int min) {
+        return (int) group.stream().filter(s -> s.length() > min).count();
+    }
+}
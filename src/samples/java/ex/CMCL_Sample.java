@@ -0,0 +1,91 @@
+package ex;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class CMCL_Sample {
+
+    public List<String> existingFiles(List<String> names) {
+        List<String> existing = new ArrayList<>();
+        for (String name : names) {
+            if (isPresent(name)) {
+                existing.add(name);
+            }
+        }
+        return existing;
+    }
+
+    public int nestedReflection(List<Object> beans, List<String> properties) throws Exception {
+        int count = 0;
+        for (Object bean : beans) {
+            for (String property : properties) {
+                if (readProperty(bean, property) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public int regexHelper(List<String> lines) {
+        int count = 0;
+        for (String line : lines) {
+            count += CMCL_Helper.splitWords(line).length;
+        }
+        return count;
+    }
+
+    public boolean fpNotInLoop(String name) {
+        return isPresent(name);
+    }
+
+    public List<CMCL_FpBase> fpSiblingConstructors(List<String> names) {
+        List<CMCL_FpBase> nodes = new ArrayList<>();
+        for (String name : names) {
+            nodes.add(new CMCL_FpPlainChild(name));
+            nodes.add(new CMCL_FpBase(name));
+        }
+        return nodes;
+    }
+
+    private boolean isPresent(String name) {
+        return new File(name).exists();
+    }
+
+    private Object readProperty(Object bean, String property) throws Exception {
+        Method m = bean.getClass().getMethod("get" + property);
+        return m.invoke(bean);
+    }
+}
+
+class CMCL_Helper {
+    static String[] splitWords(String line) {
+        return Pattern.compile("\\s+").split(line);
+    }
+}
+
+class CMCL_FpBase {
+    protected final String name;
+
+    CMCL_FpBase(String name) {
+        this.name = name;
+    }
+}
+
+class CMCL_FpPlainChild extends CMCL_FpBase {
+    CMCL_FpPlainChild(String name) {
+        super(name);
+    }
+}
+
+class CMCL_FpDiskChild extends CMCL_FpBase {
+    private final boolean present;
+
+    CMCL_FpDiskChild(String name) {
+        super(name);
+        present = new File(name).exists();
+    }
+}
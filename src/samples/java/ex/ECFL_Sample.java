@@ -0,0 +1,129 @@
+package ex;
+
+import java.util.InputMismatchException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+public class ECFL_Sample {
+
+    private static final IllegalStateException STOP = new IllegalStateException();
+
+    public int sumValid(List<String> values) {
+        int sum = 0;
+        for (String v : values) {
+            try {
+                sum += Integer.parseInt(v);
+            } catch (NumberFormatException e) {
+                // skip
+            }
+        }
+        return sum;
+    }
+
+    public int sumValidBroadCatch(List<String> values) {
+        int sum = 0;
+        for (String v : values) {
+            try {
+                sum += Integer.parseInt(v);
+            } catch (RuntimeException e) {
+                // skip
+            }
+        }
+        return sum;
+    }
+
+    public int sumScanned(Scanner scanner, int count) {
+        int sum = 0;
+        for (int i = 0; i < count; i++) {
+            try {
+                sum += scanner.nextInt();
+            } catch (InputMismatchException e) {
+                scanner.next();
+            }
+        }
+        return sum;
+    }
+
+    public int countPositive(int[] values) {
+        int count = 0;
+        for (int v : values) {
+            try {
+                if (v <= 0) {
+                    throw new IllegalArgumentException("not positive");
+                }
+                count++;
+            } catch (IllegalArgumentException e) {
+                // skip
+            }
+        }
+        return count;
+    }
+
+    public void drain(List<Iterator<String>> its, StringBuilder sb) {
+        for (Iterator<String> it : its) {
+            while (true) {
+                try {
+                    sb.append(it.next());
+                } catch (NoSuchElementException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    public int fpOutsideLoop(List<String> values) {
+        int sum = 0;
+        try {
+            for (String v : values) {
+                sum += Integer.parseInt(v);
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return sum;
+    }
+
+    public int fpPreallocated(int[] values) {
+        int count = 0;
+        for (int v : values) {
+            try {
+                if (v <= 0) {
+                    throw STOP;
+                }
+                count++;
+            } catch (IllegalStateException e) {
+                // skip
+            }
+        }
+        return count;
+    }
+
+    public int fpDifferentCatch(int[] values) {
+        int count = 0;
+        for (int v : values) {
+            try {
+                if (v <= 0) {
+                    throw new UnsupportedOperationException();
+                }
+                count++;
+            } catch (IllegalStateException e) {
+                // skip
+            }
+        }
+        return count;
+    }
+
+    public void fpWrapped(List<String> values) throws Exception {
+        for (String v : values) {
+            try {
+                if (v.isEmpty()) {
+                    throw new IllegalStateException();
+                }
+            } finally {
+                System.out.println(v);
+            }
+        }
+    }
+}
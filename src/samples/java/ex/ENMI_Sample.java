@@ -32,6 +32,73 @@ public class ENMI_Sample {
             System.out.println("Flap Jacks");
         }
     }
+
+    public int valuesInLoop(int[] codes) {
+        int found = 0;
+        for (int code : codes) {
+            for (Status s : Status.values()) {
+                if (s.code == code) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    public int valuesLengthInLoop() {
+        int sum = 0;
+        for (int i = 0; i < Status.values().length; i++) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    public int fpValuesHoisted(int[] codes) {
+        Status[] statuses = Status.values();
+        int found = 0;
+        for (int code : codes) {
+            for (Status s : statuses) {
+                if (s.code == code) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    enum Status {
+        ACTIVE(1), INACTIVE(2), DELETED(3);
+
+        private static final Status[] CACHED = values();
+
+        final int code;
+
+        Status(int c) {
+            code = c;
+        }
+
+        public static Status fromCode(int code) {
+            for (Status s : values()) {
+                if (s.code == code) {
+                    return s;
+                }
+            }
+            return null;
+        }
+
+        public static Status fpFromCodeCached(int code) {
+            for (Status s : CACHED) {
+                if (s.code == code) {
+                    return s;
+                }
+            }
+            return null;
+        }
+
+        public static Status fpByOrdinal(int ordinal) {
+            return values()[ordinal];
+        }
+    }
 }
 
 enum ENMIFP {
@@ -7,10 +7,12 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -57,6 +59,30 @@ public class FII_Sample {
         return baubles.stream().collect(Collectors.toList()).get(0);
     }
 
+    public int boxedMapReduce(List<String> names) {
+        return names.stream().map(n -> n.length() * 2).reduce(0, Integer::sum);
+    }
+
+    public int boxedIdentityReduce(List<Integer> counts) {
+        return counts.stream().reduce(0, Integer::sum);
+    }
+
+    public Optional<Long> boxedMax(List<Bauble> baubles) {
+        return baubles.stream().map(b -> Long.valueOf(b.getName().length())).max(Long::compare);
+    }
+
+    public Optional<Integer> boxedFilteredMax(List<String> names) {
+        return names.stream().map(String::length).filter(l -> l > 2).max(Integer::compare);
+    }
+
+    public int boxedThenUnboxed(int limit) {
+        return IntStream.range(0, limit).boxed().mapToInt(Integer::intValue).sum();
+    }
+
+    public int fpPrimitiveSum(List<String> names) {
+        return names.stream().mapToInt(String::length).sum();
+    }
+
     public List<Bauble> backToBackFilter(Set<Bauble> baubles) {
         return baubles.stream().filter(b -> b.getName().equals("diamonds")).filter(b -> b.isFree())
                 .collect(Collectors.toList());
@@ -0,0 +1,95 @@
+package ex;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+public class HOPC_Sample {
+
+    private static final ThreadLocal<DateFormat> FORMAT = ThreadLocal
+            .withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+
+    private static SecureRandom random;
+
+    private DocumentBuilderFactory factory;
+
+    public String formatPerCall(Date d) {
+        return new SimpleDateFormat("yyyy-MM-dd").format(d);
+    }
+
+    public byte[] digestPerCall(byte[] data) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    public List<Integer> randomInLoop(int count) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(Integer.valueOf(new SecureRandom().nextInt()));
+        }
+        return values;
+    }
+
+    public String fpThreadLocal(Date d) {
+        return FORMAT.get().format(d);
+    }
+
+    public int fpLazyStatic() {
+        if (random == null) {
+            random = new SecureRandom();
+        }
+        return random.nextInt();
+    }
+
+    public DocumentBuilderFactory fpLazyField() {
+        if (factory == null) {
+            factory = DocumentBuilderFactory.newInstance();
+        }
+        return factory;
+    }
+}
+
+class HOPC_Task implements Runnable {
+
+    private final MessageDigest digest;
+
+    public HOPC_Task() throws NoSuchAlgorithmException {
+        digest = MessageDigest.getInstance("MD5");
+    }
+
+    @Override
+    public void run() {
+        digest.reset();
+    }
+}
+
+class HOPC_Service {
+
+    private final SimpleDateFormat format;
+
+    public HOPC_Service() {
+        format = new SimpleDateFormat("HH:mm");
+    }
+
+    public synchronized String fpFormat(Date d) {
+        return format.format(d);
+    }
+}
+
+class HOPC_FpFormatTask extends SimpleDateFormat implements Runnable {
+
+    public HOPC_FpFormatTask() {
+        super("yyyy-MM-dd");
+    }
+
+    @Override
+    public void run() {
+        format(new Date());
+    }
+}
@@ -1,14 +1,21 @@
 package ex;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -62,6 +69,104 @@ public class IOI_Sample {
         expander.inflate(out);
     }
 
+    public int byteAtATimeRead(File f) throws IOException {
+        int sum = 0;
+        try (InputStream is = new FileInputStream(f)) {
+            int b;
+            while ((b = is.read()) >= 0) {
+                sum += b;
+            }
+        }
+        return sum;
+    }
+
+    public void byteAtATimeWrite(String name, byte[] data) throws IOException {
+        try (OutputStream os = new FileOutputStream(name)) {
+            for (byte b : data) {
+                os.write(b);
+            }
+        }
+    }
+
+    public long socketInts(Socket s, int count) throws IOException {
+        DataInputStream dis = new DataInputStream(s.getInputStream());
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += dis.readInt();
+        }
+        return sum;
+    }
+
+    public int randomAccess(File f) throws IOException {
+        int sum = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            for (long i = 0; i < raf.length(); i++) {
+                sum += raf.read();
+            }
+        }
+        return sum;
+    }
+
+    public String readLineByHand(InputStream in) throws IOException {
+        Reader r = new InputStreamReader(in, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while (((c = r.read()) >= 0) && (c != '\n')) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    public int readUntilEnd(File f) throws IOException {
+        InputStream is = new FileInputStream(f);
+        int b;
+        int sum = 0;
+        while ((b = is.read()) >= 0) {
+            sum += b;
+        }
+        is.close();
+        return sum;
+    }
+
+    public int fpBuffered(File f) throws IOException {
+        int sum = 0;
+        try (InputStream is = new BufferedInputStream(new FileInputStream(f))) {
+            int b;
+            while ((b = is.read()) >= 0) {
+                sum += b;
+            }
+        }
+        return sum;
+    }
+
+    public int fpRewrapped(File f) throws IOException {
+        InputStream is = new FileInputStream(f);
+        is = new BufferedInputStream(is);
+        int b;
+        int sum = 0;
+        while ((b = is.read()) >= 0) {
+            sum += b;
+        }
+        is.close();
+        return sum;
+    }
+
+    public int fpSingleRead(File f) throws IOException {
+        try (InputStream is = new FileInputStream(f)) {
+            return is.read();
+        }
+    }
+
+    public String fpBufferedReader(InputStream in) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = br.read()) >= 0) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
     class FPBofoStream extends FileInputStream {
 
         public FPBofoStream(File f) throws IOException {
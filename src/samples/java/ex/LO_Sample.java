@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.swing.text.DateFormatter;
@@ -155,6 +156,48 @@ public class LO_Sample {
             l3.error("Whoops {}", e.toString());
         }
 
+        public void testEagerDebugArguments(List<String> names, double ratio) {
+            // tag LO_EAGER_LOG_ARGUMENT_EVALUATION
+            l3.debug("Ratio {}", String.format("%.2f", ratio));
+            // tag LO_EAGER_LOG_ARGUMENT_EVALUATION
+            l3.trace("Names {} at {}", Arrays.toString(names.toArray()), ratio);
+            // tag LO_EAGER_LOG_ARGUMENT_EVALUATION
+            l3.debug("Names {} {} {}", names.size(), ratio, String.join(",", names));
+        }
+
+        public void fpGuardedDebugArguments(List<String> names, double ratio) {
+            if (l3.isDebugEnabled()) {
+                // no tag
+                l3.debug("Ratio {}", String.format("%.2f", ratio));
+            }
+            String joined = String.join(",", names);
+            // no tag
+            l3.debug("Names {}", joined);
+            // no tag
+            l3.info("Ratio {}", String.format("%.2f", ratio));
+        }
+
+        public void testApplicationLevelCheck(FpAuditLog audit, boolean verbose, double ratio) {
+            if (audit.isDebugEnabled() || verbose) {
+                audit.debug("verbose");
+            }
+            // tag LO_EAGER_LOG_ARGUMENT_EVALUATION
+            l3.debug("Ratio {}", String.format("%.2f", ratio));
+        }
+
+        public void fpApplicationLog(FpAuditLog audit, double ratio) {
+            // no tag
+            audit.debug(String.format("%.2f", ratio));
+        }
+
+        public void fpEarlyReturnGuard(List<String> names) {
+            if (!l3.isTraceEnabled()) {
+                return;
+            }
+            // no tag
+            l3.trace("Names {}", String.join(",", names));
+        }
+
         public class Inner {
             public void fpUseAnon() {
                 ActionListener l = new ActionListener() {
@@ -424,6 +467,15 @@ public class LO_Sample {
         }
     }
 
+    public static class FpAuditLog {
+        public boolean isDebugEnabled() {
+            return false;
+        }
+
+        public void debug(String message) {
+        }
+    }
+
     class FunnyToString {
         public String toString(DateFormatter df) {
             return "";
@@ -0,0 +1,94 @@
+package ex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class LSIL_Sample {
+
+    private static final List<String> KEYWORDS = Arrays.asList("if", "else", "for");
+
+    private List<String> known = new ArrayList<>();
+
+    public int contains(List<String> ids, List<String> candidates) {
+        int count = 0;
+        for (String c : candidates) {
+            if (ids.contains(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public List<Integer> indexOfNested(List<List<String>> groups, List<String> order) {
+        List<Integer> positions = new ArrayList<>();
+        for (List<String> group : groups) {
+            for (String s : group) {
+                positions.add(Integer.valueOf(order.indexOf(s)));
+            }
+        }
+        return positions;
+    }
+
+    public void removeField(List<String> stale) {
+        for (String s : stale) {
+            known.remove(s);
+        }
+    }
+
+    public boolean streamAnyMatch(List<String> names, List<String> prefixes) {
+        for (String p : prefixes) {
+            if (names.stream().anyMatch(n -> n.startsWith(p))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int constantList(List<String> words) {
+        int count = 0;
+        for (String w : words) {
+            if (KEYWORDS.contains(w)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int fpSet(Set<String> ids, List<String> candidates) {
+        int count = 0;
+        for (String c : candidates) {
+            if (ids.contains(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int fpListPerIteration(List<List<String>> groups, String key) {
+        int count = 0;
+        for (List<String> group : groups) {
+            if (group.contains(key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean fpNotInLoop(List<String> ids, String id) {
+        return ids.contains(id);
+    }
+
+    public int fpHashSet(List<String> ids, List<String> candidates) {
+        Set<String> idSet = new HashSet<>(ids);
+        int count = 0;
+        for (String c : candidates) {
+            if (idSet.contains(c)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -5,10 +5,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MUI_Sample {
 
     Map<String, String> fieldMap = new HashMap<>();
+    Map<String, List<String>> groupMap = new HashMap<>();
+    ConcurrentHashMap<String, Integer> concurrentCounts = new ConcurrentHashMap<>();
 
     public String testGetAfterContainsKeyLocal() {
         Map<String, String> localMap = new HashMap<>();
@@ -91,4 +94,61 @@ public class MUI_Sample {
         return MUI_Sample.class.getName();
     }
 
+    public void testCountWithGet(List<String> words, Map<String, Integer> counts) {
+        for (String word : words) {
+            Integer count = counts.get(word);
+            counts.put(word, count == null ? 1 : count + 1);
+        }
+    }
+
+    public void testCountWithGetOrDefault(List<String> words, Map<String, Integer> counts) {
+        for (String word : words) {
+            counts.put(word, counts.getOrDefault(word, 0) + 1);
+        }
+    }
+
+    public List<String> testGroupWithGet(String key) {
+        List<String> group = groupMap.get(key);
+        if (group == null) {
+            group = new ArrayList<>();
+            groupMap.put(key, group);
+        }
+        return group;
+    }
+
+    public void testPutIfMissing(Map<String, String> m, String k, String v) {
+        if (!m.containsKey(k)) {
+            m.put(k, v);
+        }
+    }
+
+    public void testConcurrentCount(String word) {
+        Integer count = concurrentCounts.get(word);
+        concurrentCounts.put(word, count == null ? 1 : count + 1);
+    }
+
+    public void fpDifferentKey(Map<String, String> m, String k1, String k2) {
+        String v = m.get(k1);
+        m.put(k2, v);
+    }
+
+    public void fpDifferentMap(Map<String, String> m1, Map<String, String> m2, String k) {
+        m2.put(k, m1.get(k));
+    }
+
+    public void fpKeyChangesInLoop(List<String> keys, Map<String, String> m) {
+        String prev = null;
+        for (String k : keys) {
+            if (prev != null) {
+                m.put(prev, m.get(k));
+            }
+            prev = k;
+        }
+    }
+
+    public void fpMerge(List<String> words, Map<String, Integer> counts) {
+        for (String word : words) {
+            counts.merge(word, 1, Integer::sum);
+        }
+    }
 }
@@ -2,9 +2,27 @@ package ex;
 
 import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RFI_Sample {
 
+    private static final String HANDLER_CLASS = "ex.RFI_Sample";
+    private static final Method CACHED_RUN;
+
+    static {
+        try {
+            CACHED_RUN = Runnable.class.getMethod("run");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<String, Method> methodCache = new ConcurrentHashMap<>();
+    private Method lazyRun;
+
     public void accessSingleField() throws Exception {
 
         String s = "Hello";
@@ -32,4 +50,71 @@ public class RFI_Sample {
 
         System.out.println(s);
     }
+
+    public void invokePerCall(Runnable r) throws Exception {
+        Method m = Runnable.class.getMethod("run");
+        m.invoke(r);
+    }
+
+    public void lookupInLoop(List<Runnable> rs) throws Exception {
+        for (Runnable r : rs) {
+            Runnable.class.getMethod("run").invoke(r);
+        }
+    }
+
+    public Object forNameNewInstance() throws Exception {
+        return Class.forName(HANDLER_CLASS).getConstructor().newInstance();
+    }
+
+    public String repeatedLookup(Object o) throws Exception {
+        Object a = Object.class.getMethod("toString").invoke(o);
+        Object b = Object.class.getMethod("toString").invoke(a);
+        return String.valueOf(b);
+    }
+
+    public void fpCached(Runnable r) throws Exception {
+        CACHED_RUN.invoke(r);
+    }
+
+    public void fpLazy(Runnable r) throws Exception {
+        if (lazyRun == null) {
+            lazyRun = Runnable.class.getMethod("run");
+        }
+        lazyRun.invoke(r);
+    }
+
+    public void fpCachedAfterBranch(boolean log) throws Exception {
+        Method m = Runnable.class.getMethod("run");
+        if (log) {
+            System.out.println(m.getName());
+        }
+        lazyRun = m;
+    }
+
+    public void fpMemoized(Runnable r) throws Exception {
+        Method m = methodCache.get("run");
+        if (m == null) {
+            m = Runnable.class.getMethod("run");
+            methodCache.put("run", m);
+        }
+        m.invoke(r);
+    }
+
+    public Method fpComputed(String name) {
+        return methodCache.computeIfAbsent(name, n -> {
+            try {
+                return Runnable.class.getMethod("run");
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        });
+    }
+
+    public Method fpLookupHelper() throws NoSuchMethodException {
+        return Runnable.class.getMethod("run");
+    }
+
+    public Object fpDynamicName(Object o, String name) throws Exception {
+        return o.getClass().getMethod(name).invoke(o);
+    }
 }
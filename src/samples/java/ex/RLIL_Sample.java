@@ -0,0 +1,108 @@
+package ex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RLIL_Sample {
+
+    private final Object monitor = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<String> shared = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> plain = new ArrayList<>();
+    private int total;
+
+    public void syncBlock(List<String> values) {
+        for (String v : values) {
+            synchronized (monitor) {
+                total += v.length();
+            }
+        }
+    }
+
+    public void syncThisNested(List<List<String>> groups) {
+        for (List<String> group : groups) {
+            for (String v : group) {
+                synchronized (this) {
+                    total += v.length();
+                }
+            }
+        }
+    }
+
+    public void lock(List<String> values) {
+        for (String v : values) {
+            lock.lock();
+            try {
+                total += v.length();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public Vector<String> vector(List<String> values) {
+        Vector<String> v = new Vector<>();
+        for (String s : values) {
+            v.add(s);
+        }
+        return v;
+    }
+
+    public void syncWrapperField(List<String> values) {
+        for (String s : values) {
+            shared.add(s);
+        }
+    }
+
+    public List<String> syncWrapperLocal(List<String> values) {
+        List<String> l = Collections.synchronizedList(new ArrayList<String>());
+        for (String s : values) {
+            l.add(s);
+        }
+        return l;
+    }
+
+    public void classLock(List<String> values) {
+        for (String v : values) {
+            synchronized (RLIL_Sample.class) {
+                total += v.length();
+            }
+        }
+    }
+
+    public void fpPerItemMonitor(List<Map<String, String>> maps) {
+        for (Map<String, String> m : maps) {
+            synchronized (m) {
+                m.clear();
+            }
+        }
+    }
+
+    public void fpEventLoop(BlockingQueue<String> queue) throws InterruptedException {
+        while (true) {
+            String s = queue.take();
+            synchronized (monitor) {
+                total += s.length();
+            }
+        }
+    }
+
+    public void fpPlainField(List<String> values) {
+        for (String s : values) {
+            plain.add(s);
+        }
+    }
+
+    public void fpOutsideLoop(List<String> values) {
+        synchronized (monitor) {
+            for (String v : values) {
+                total += v.length();
+            }
+        }
+    }
+}
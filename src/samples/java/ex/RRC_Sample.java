@@ -0,0 +1,70 @@
+package ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RRC_Sample {
+
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    private static Pattern lazyWords;
+
+    public boolean matches(String s) {
+        return s.matches("[a-z]+");
+    }
+
+    public List<String> replaceInLoop(List<String> lines) {
+        List<String> cleaned = new ArrayList<>();
+        for (String line : lines) {
+            cleaned.add(line.replaceAll("\\s+", " "));
+        }
+        return cleaned;
+    }
+
+    public String[] splitRegex(String s) {
+        return s.split(",\\s*");
+    }
+
+    public int compileInLoop(List<String> lines) {
+        int count = 0;
+        for (String line : lines) {
+            Matcher m = Pattern.compile("^#").matcher(line);
+            if (m.find()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean patternMatches(String s) {
+        return Pattern.matches("[0-9a-f]+", s);
+    }
+
+    public String[] fpSplitChar(String s) {
+        return s.split(",");
+    }
+
+    public String[] fpSplitEscaped(String s) {
+        return s.split("\\|");
+    }
+
+    public boolean fpStaticPattern(String s) {
+        return DIGITS.matcher(s).matches();
+    }
+
+    public boolean fpDynamicRegex(String s, String regex) {
+        return s.matches(regex);
+    }
+
+    public boolean fpLazyPattern(String s) {
+        if (lazyWords == null) {
+            lazyWords = Pattern.compile("\\w+");
+        }
+        return lazyWords.matcher(s).matches();
+    }
+
+    public String fpLiteralReplace(String s) {
+        return s.replace("a", "b");
+    }
+}
@@ -4,6 +4,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
 
 @SuppressWarnings("all")
 public class SIL_Sample {
@@ -17,4 +21,55 @@ public class SIL_Sample {
             ResultSet mrs = ps.executeQuery();
         }
     }
+
+    public List<String> testIndirect(Connection c, List<Integer> ids) throws SQLException {
+        SIL_Dao dao = new SIL_JdbcDao(c);
+        List<String> names = new ArrayList<>();
+        for (Integer id : ids) {
+            names.add(dao.findName(id.intValue()));
+        }
+        return names;
+    }
+
+    public void fpBatchableUpdate(Connection c, List<Integer> ids) throws SQLException {
+        PreparedStatement ps = c.prepareStatement("delete from boo where moo = ?");
+        for (Integer id : ids) {
+            ps.setInt(1, id.intValue());
+            ps.executeUpdate();
+        }
+    }
+
+    public List<Object> testJPA(EntityManager em, List<Long> ids) {
+        List<Object> entities = new ArrayList<>();
+        for (Long id : ids) {
+            entities.add(em.find(Object.class, id));
+        }
+        return entities;
+    }
+}
+
+interface SIL_Dao {
+    String findName(int id) throws SQLException;
+}
+
+class SIL_JdbcDao implements SIL_Dao {
+    private Connection c;
+
+    public SIL_JdbcDao(Connection c) {
+        this.c = c;
+    }
+
+    @Override
+    public String findName(int id) throws SQLException {
+        return lookup("select name from boo where moo = ?", id);
+    }
+
+    private String lookup(String sql, int id) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
 }
@@ -0,0 +1,153 @@
+package ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class TPI_Sample {
+
+    private final ExecutorService shared;
+    private ExecutorService lazy;
+
+    public TPI_Sample() {
+        shared = Executors.newFixedThreadPool(4);
+    }
+
+    public void perCall(Runnable r) {
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        es.submit(r);
+        es.shutdown();
+    }
+
+    public void forkJoinPerCall(List<Runnable> work) {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (Runnable r : work) {
+            pool.execute(r);
+        }
+        pool.shutdown();
+    }
+
+    public void threadPerCall(Runnable r) {
+        new Thread(r).start();
+    }
+
+    public void workerPerCall() {
+        new Worker().start();
+    }
+
+    public void handleFirst(Runnable r) {
+        perCall(r);
+    }
+
+    public void handleSecond(Runnable r) {
+        perCall(r);
+    }
+
+    public void handleThird(Runnable r) {
+        perCall(r);
+    }
+
+    public void threadsInLoop(List<Runnable> work) {
+        for (Runnable r : work) {
+            Thread t = new Thread(r);
+            t.start();
+        }
+    }
+
+    public void executorsInLoop(List<Runnable> work) {
+        for (Runnable r : work) {
+            ExecutorService es = Executors.newSingleThreadExecutor();
+            es.execute(r);
+            es.shutdown();
+        }
+    }
+
+    public ExecutorService cached() {
+        return Executors.newCachedThreadPool();
+    }
+
+    public ExecutorService unboundedQueue() {
+        return new ThreadPoolExecutor(2, 8, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+
+    public void fpShared(Runnable r) {
+        shared.submit(r);
+    }
+
+    public synchronized ExecutorService fpLazy() {
+        if (lazy == null) {
+            lazy = Executors.newFixedThreadPool(2);
+        }
+        return lazy;
+    }
+
+    public ExecutorService fpFactory() {
+        return Executors.newFixedThreadPool(4);
+    }
+
+    public ExecutorService fpBoundedQueue() {
+        return new ThreadPoolExecutor(2, 8, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(100));
+    }
+
+    public ExecutorService fpArrayQueue() {
+        return new ThreadPoolExecutor(2, 8, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(100));
+    }
+
+    public void fpHandedOff(List<ExecutorService> pools) {
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        pools.add(es);
+    }
+
+    public void fpKeptAfterLoop(List<Runnable> work) {
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        for (Runnable r : work) {
+            es.submit(r);
+        }
+        lazy = es;
+    }
+
+    public List<Thread> fpThreadsKept(List<Runnable> work) {
+        List<Thread> threads = new ArrayList<>();
+        for (Runnable r : work) {
+            Thread t = new Thread(r);
+            threads.add(t);
+            t.start();
+        }
+        return threads;
+    }
+
+    public static void fpStartOnce(Runnable r) {
+        new Thread(r).start();
+    }
+
+    public static void main(String[] args) {
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        es.submit(() -> System.out.println("hello"));
+        es.shutdown();
+    }
+
+    static class FpFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    static class Worker extends Thread {
+    }
+
+    static class FpWorker extends Thread {
+        FpWorker() {
+            super("worker");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ex;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+public class UDW_Sample {
+
+    public void deleteEach(Connection c, List<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("delete from boo where moo = ?")) {
+            for (Integer id : ids) {
+                ps.setInt(1, id.intValue());
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    public void insertEach(Connection c, List<String> names) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("insert into boo (name, active) values (?, ?)")) {
+            for (String name : names) {
+                ps.clearParameters();
+                ps.setString(1, name);
+                ps.setBoolean(2, true);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    public void persistEach(EntityManager em, List<Object> entities) {
+        for (Object entity : entities) {
+            em.persist(entity);
+        }
+    }
+
+    public void fpBatched(Connection c, List<Integer> ids) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("delete from boo where moo = ?")) {
+            for (Integer id : ids) {
+                ps.setInt(1, id.intValue());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    public int fpCountUsed(Connection c, List<Integer> ids) throws SQLException {
+        int missing = 0;
+        try (PreparedStatement ps = c.prepareStatement("update boo set moo = moo + 1 where id = ?")) {
+            for (Integer id : ids) {
+                ps.setInt(1, id.intValue());
+                if (ps.executeUpdate() == 0) {
+                    missing++;
+                }
+            }
+        }
+        return missing;
+    }
+
+    public void fpPreparedInLoop(Connection c, List<String> tables) throws SQLException {
+        for (String table : tables) {
+            try (PreparedStatement ps = c.prepareStatement("delete from " + table)) {
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    public void fpPersistFlushed(EntityManager em, List<Object> entities) {
+        int count = 0;
+        for (Object entity : entities) {
+            em.persist(entity);
+            if (++count % 50 == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+public class UFG_Sample {
+
+    static final Map<String, Object> ATTRIBUTES = new HashMap<>();
+    static final List<String> AUDIT = new ArrayList<>();
+    private static final Map<String, Long> SESSIONS = new ConcurrentHashMap<>();
+    private static final Map<String, String> CONSTANTS = new HashMap<>();
+    private static final Map<String, String> PRUNED = new HashMap<>();
+    private static final Map<String, String> LRU = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > 100;
+        }
+    };
+
+    static {
+        register("a", "1");
+        register("b", "2");
+    }
+
+    private static void register(String k, String v) {
+        CONSTANTS.put(k, v);
+    }
+
+    public static Map<String, Long> getSessions() {
+        return SESSIONS;
+    }
+
+    public static Map<String, String> getPruned() {
+        return PRUNED;
+    }
+
+    public static Map<String, String> getLru() {
+        return LRU;
+    }
+
+    static class Filler {
+        public void addAttribute(String name, Object value) {
+            ATTRIBUTES.put(name, value);
+        }
+
+        public void audit(String msg) {
+            AUDIT.add(msg);
+        }
+
+        public void trackSession() {
+            String id = UUID.randomUUID().toString();
+            UFG_Sample.getSessions().put(id, Long.valueOf(System.currentTimeMillis()));
+        }
+
+        public void fpPruned(String k, String v) {
+            UFG_Sample.getPruned().put(k, v);
+        }
+
+        public void fpLru(String k, String v) {
+            UFG_Sample.getLru().put(k, v);
+        }
+    }
+
+    static class Pruner {
+        public void fpPrune() {
+            Map<String, String> pruned = UFG_Sample.getPruned();
+            pruned.keySet().removeIf(k -> k.startsWith("tmp"));
+        }
+    }
+
+    @Service
+    public static class UserCache {
+        private final Map<String, String> users = new HashMap<>();
+        private final Map<String, String> limited = new HashMap<>();
+
+        public String lookup(String id) {
+            return users.computeIfAbsent(id, k -> k.toUpperCase());
+        }
+
+        public void fpLimited(String k, String v) {
+            limited.put(k, v);
+        }
+
+        public void fpEvict(String k) {
+            limited.remove(k);
+        }
+    }
+
+    public static class FpNotABean {
+        private final Map<String, String> values = new HashMap<>();
+
+        public void fpAdd(String k, String v) {
+            values.put(k, v);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class VTP_Sample {
+
+    private final Object lock = new Object();
+    private final ReentrantLock reentrantLock = new ReentrantLock();
+    private byte[] cache;
+    private int count;
+
+    public synchronized void sleepInSyncMethod() throws InterruptedException {
+        Thread.sleep(100);
+    }
+
+    public void takeInSyncBlock(BlockingQueue<String> queue) throws InterruptedException {
+        synchronized (lock) {
+            count++;
+            queue.take();
+        }
+    }
+
+    public void earlyReturn(Path p, boolean skip) throws IOException {
+        synchronized (lock) {
+            if (skip) {
+                return;
+            }
+            cache = Files.readAllBytes(p);
+        }
+    }
+
+    public void transitive(Path p) throws IOException {
+        synchronized (this) {
+            load(p);
+        }
+    }
+
+    public void nested(Path p) throws IOException {
+        synchronized (lock) {
+            synchronized (this) {
+                count++;
+            }
+            cache = Files.readAllBytes(p);
+        }
+    }
+
+    public void fpOutside(Path p) throws IOException {
+        byte[] data = Files.readAllBytes(p);
+        synchronized (lock) {
+            cache = data;
+        }
+    }
+
+    public void fpReentrantLock(Path p) throws IOException {
+        reentrantLock.lock();
+        try {
+            cache = Files.readAllBytes(p);
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    public void fpAfterBlock(Path p) throws IOException {
+        synchronized (lock) {
+            count++;
+        }
+        load(p);
+    }
+
+    private void load(Path p) throws IOException {
+        cache = Files.readAllBytes(p);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+
+public class BoundedBugReporterTest {
+
+    @Mock
+    private BugReporter delegate;
+
+    @BeforeMethod
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    private static BugInstance bug(String type, String clsName, int line) {
+        return new BugInstance(type, Priorities.NORMAL_PRIORITY).addClass(clsName).addSourceLine(
+                SourceLineAnnotation.fromRawData(clsName, clsName + ".java", line, line, 0, 0));
+    }
+
+    @Test
+    public void shouldDropDuplicates() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 0, 0);
+        reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.A", 10));
+        reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.A", 10));
+        reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.A", 11));
+
+        verify(delegate, times(2)).reportBug(any(BugInstance.class));
+    }
+
+    @Test
+    public void shouldLimitPerClass() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 2, 0);
+        for (int i = 0; i < 10; i++) {
+            reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.A", i));
+        }
+        reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.B", 1));
+
+        // two allowed for a.A, and one for a.B
+        verify(delegate, times(3)).reportBug(any(BugInstance.class));
+        assertEquals(reporter.getSuppressedCount("FP_FINAL_PARAMETERS"), 8);
+    }
+
+    @Test
+    public void shouldLimitInterleavedClasses() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 1, 0);
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.A", 1));
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.B", 1));
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.A", 2));
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.B", 2));
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.A", 1));
+
+        // one allowed for each class, and the repeat of a.A is a duplicate
+        verify(delegate, times(2)).reportBug(any(BugInstance.class));
+        assertEquals(reporter.getSuppressedCount("UP_UNUSED_PARAMETER"), 2);
+    }
+
+    @Test
+    public void shouldLimitPerPattern() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 0, 3);
+        for (int i = 0; i < 10; i++) {
+            reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.C" + i, 1));
+        }
+
+        verify(delegate, times(3)).reportBug(any(BugInstance.class));
+        assertEquals(reporter.getSuppressedCount("UP_UNUSED_PARAMETER"), 7);
+    }
+
+    @Test
+    public void shouldNotCountClassLimitedAgainstPattern() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 2, 3);
+        for (int i = 0; i < 5; i++) {
+            reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.A", i));
+        }
+        reporter.reportBug(bug("UP_UNUSED_PARAMETER", "a.B", 1));
+
+        // two allowed for a.A, and a.B is still under the pattern limit
+        verify(delegate, times(3)).reportBug(any(BugInstance.class));
+        assertEquals(reporter.getSuppressedCount("UP_UNUSED_PARAMETER"), 3);
+    }
+
+    @Test
+    public void shouldResetSuppressedTotals() {
+        BoundedBugReporter reporter = new BoundedBugReporter(delegate, 1, 0);
+        for (int i = 0; i < 4; i++) {
+            reporter.reportBug(bug("FP_FINAL_PARAMETERS", "a.A", i));
+        }
+
+        assertEquals(reporter.getSuppressedCount("FP_FINAL_PARAMETERS"), 3);
+        reporter.reportSuppressedBugs();
+
+        // the totals are information, not analysis errors
+        verify(delegate, never()).logError(anyString());
+        assertEquals(reporter.getSuppressedCount("FP_FINAL_PARAMETERS"), 0);
+    }
+}
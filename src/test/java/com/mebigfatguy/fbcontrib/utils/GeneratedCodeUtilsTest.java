@@ -0,0 +1,42 @@
+/*
+ * fb-contrib - Auxiliary detectors for Java programs
+ * Copyright (C) 2005-2019 Dave Brosius
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package com.mebigfatguy.fbcontrib.utils;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class GeneratedCodeUtilsTest {
+
+    @DataProvider(name = "classNames")
+    public Object[][] classNames() {
+        return new Object[][] { { "com.acme.AddressBookOuterClass", true },
+                { "com.acme.AddressBookOuterClass$Person", true }, { "com.acme.GreeterGrpc$GreeterStub", true },
+                { "org.apache.jsp.index_jsp", true }, { "com.acme.AutoValue_Money", true },
+                { "com.acme.DaggerAppComponent", true }, { "com.acme.Service_Factory", true },
+                { "com.acme.Service$$EnhancerByCGLIB$$1234", true }, { "com.acme.Daggerheart", false },
+                { "com.acme.Outer$Factory", false }, { "com.acme.Person", false }, { "Grpcish", false } };
+    }
+
+    @Test(dataProvider = "classNames")
+    public void shouldRecognizeGeneratedNames(String clsName, boolean expected) {
+        assertEquals(GeneratedCodeUtils.isGeneratedName(clsName), expected);
+    }
+}